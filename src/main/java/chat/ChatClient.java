@@ -3,94 +3,117 @@ package chat;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.rmi.AccessException;
 import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
-import java.util.ArrayList;
+import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import chat.UI.ChatUI;
 import chat.info.FileInfo;
-import javafx.application.Platform;
+import chat.info.MessageInfo;
+import chat.info.SendResult;
+import chat.info.SessionToken;
+import chat.transport.ChatTransport;
 import javafx.stage.FileChooser;
 
-public class ChatClient extends UnicastRemoteObject implements IChatClient {
+public class ChatClient implements IChatClient {
     private final String username;
     private final IChatServer server;
     private ChatUI ui;
-    private Map<String, List<String>> unreadMessages = new HashMap<>();
+    private volatile SessionToken session; // Devolvido pelo login; identifica este cliente nas chamadas
+    private final SecureRandom random = new SecureRandom();
+    private String unconfirmedSend; // Destinatário e texto do último envio sem resposta definitiva
+    private long unconfirmedSendId;
 
     public ChatClient(String username, IChatServer server, ChatUI ui) throws RemoteException {
-        super(); // O argumento 'this' eh o objeto Callback sendo enviado
-                 // return server.login(username, password, this);
         this.username = username;
         this.server = server;
         this.ui = ui;
+        // O argumento 'this' eh o objeto Callback sendo enviado (return server.login(username, password, this));
+        // no RMI é exportado com as fábricas de compressão, no NIO vai pela conexão já aberta
+        ChatTransport.exportCallback(this);
     }
 
     @Override
     public boolean login(String password) throws RemoteException {
-        return server.login(username, password, this);
+        session = server.openSession(username, password, this);
+        return session != null;
     }
 
     @Override
     public void logout() throws RemoteException {
-        server.logout(username);
-        server.unregisterClient(username);
+        SessionToken current = session;
+        session = null;
+        if (current == null) {
+            return; // Não chegou a logar
+        }
+        try {
+            server.logout(current); // Também desliga o callback
+        } catch (AccessException e) {
+            // A sessão já tinha sido encerrada no servidor (ex.: pelo heartbeat)
+        }
     }
 
     @Override
     public void sendMessage(String recipient, String message) throws RemoteException {
-        server.sendMessage(username, recipient, message);
+        send(recipient, message);
+    }
+
+    // Envia e devolve o resultado; se o servidor recusar, diz quando tentar de novo.
+    // Enquanto um envio não tem resposta definitiva (PENDING ou erro de rede), repetir o
+    // mesmo texto para o mesmo destinatário reusa o id do envio, e o servidor não duplica
+    public SendResult send(String recipient, String message) throws RemoteException {
+        String key = recipient + "\n" + message;
+        long clientMessageId;
+        synchronized (this) {
+            if (!key.equals(unconfirmedSend)) {
+                unconfirmedSend = key;
+                unconfirmedSendId = random.nextLong(1, Long.MAX_VALUE);
+            }
+            clientMessageId = unconfirmedSendId;
+        }
+        SendResult result = server.sendMessage(session, recipient, message, clientMessageId);
+        if (result.getStatus() != SendResult.Status.PENDING) {
+            synchronized (this) {
+                if (key.equals(unconfirmedSend)) {
+                    unconfirmedSend = null; // Resposta definitiva: o próximo envio igual é outra mensagem
+                }
+            }
+        }
+        return result;
     }
 
-    @Override
-    public java.util.List<String> getUserList() throws RemoteException {
-        return server.listOnlineUsers();
+    public SendResult sendGroupMessage(String groupName, String message) throws RemoteException {
+        return server.sendGroupMessage(session, groupName, message);
     }
 
     @Override
-    public String getUsername() {
-        return username;
+    public java.util.List<String> getUserList() throws RemoteException {
+        return server.listOnlineUsers();
     }
 
-    @Override
-    public List<String> getUnreadMessages(String sender) {
-        // Retorna as mensagens não lidas do remetente, ou uma lista vazia se não houver
-        return unreadMessages.getOrDefault(sender, new ArrayList<>());
+    // Token da sessão aberta no login (null antes dele e depois do logout)
+    public SessionToken getSession() {
+        return session;
     }
 
     @Override
-    public void clearUnreadMessages(String sender) {
-        // Remove as mensagens não lidas do remetente
-        unreadMessages.remove(sender);
+    public String getUsername() {
+        return username;
     }
 
     @Override
-    public void receiveMessage(String sender, String message) throws RemoteException {
-        Platform.runLater(() -> {
-            if (ui != null) {
-                // Verifica se a janela de chat com o remetente está aberta
-                if (!ui.isChatWindowOpen(sender)) {
-                    // Adiciona a mensagem à lista de não lidas
-                    unreadMessages.computeIfAbsent(sender, k -> new ArrayList<>()).add(message);
-                } else {
-                    // Exibe a mensagem diretamente na janela de chat aberta
-                    ui.displayReceivedMessage(sender, message);
-                }
-            } else {
-                System.out.println(sender + " says: " + message);
-            }
-        });
+    public void notifyNewMessage(MessageInfo message) throws RemoteException {
+        System.out.println("📨 Nova mensagem de " + message.getSender() + ". Atualizando chat...");
+        ui.showIncomingMessage(message, false);
     }
 
     @Override
-    public void notifyNewMessage(String senderOrGroup) throws RemoteException {
-        System.out.println("📨 Nova mensagem de " + senderOrGroup + ". Atualizando chat...");
-
-        boolean isGroup = server.getGroupInfo(senderOrGroup) != null; // Verifica se é um grupo
-        ui.updateChat(senderOrGroup, isGroup);
+    public void notifyNewGroupMessage(String groupName, MessageInfo message) throws RemoteException {
+        System.out.println("📨 Nova mensagem no grupo " + groupName + ". Atualizando chat...");
+        ui.showIncomingMessage(message, true);
     }
 
     @Override
@@ -112,6 +135,28 @@ public class ChatClient extends UnicastRemoteObject implements IChatClient {
         // desejar.
     }
 
+    // As não lidas ficam no servidor (getUnreadSummary); aqui só atualiza a tela aberta
+    @Override
+    public void deliverPending(List<MessageInfo> messages) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (MessageInfo msg : messages) {
+            counts.merge(msg.getSender(), 1, Integer::sum);
+        }
+
+        for (String sender : counts.keySet()) {
+            ui.updateChat(sender, false); // Acrescenta o que falta na conversa aberta ou atualiza os contadores
+        }
+
+        StringBuilder summary = new StringBuilder("📬 Mensagens recebidas enquanto você estava offline:");
+        counts.forEach((sender, count) -> summary.append("\n").append(sender).append(": ").append(count));
+        ui.showNotification(summary.toString(), "offline", "");
+    }
+
+    @Override
+    public void ping() {
+        // Responder já basta: o servidor só quer saber se a conexão está viva
+    }
+
     @Override
     public void notifyNewGroupOwner(String groupName) throws RemoteException {
         String msg = "Você agora é o novo dono do grupo '" + groupName + "'.";
@@ -126,19 +171,19 @@ public class ChatClient extends UnicastRemoteObject implements IChatClient {
         // ideal, mas a interface não pede senha no server.deleteUser.
         // Vamos assumir que se o cliente está logado, ele pode se deletar.
         // AUI pode pedir confirmação.
-        return server.deleteUser(username, username);
+        return server.deleteUser(session, username);
     }
 
     public boolean deleteTargetUser(String targetUser) throws RemoteException {
-        return server.deleteUser(targetUser, username);
+        return server.deleteUser(session, targetUser);
     }
 
     public boolean isAdmin() throws RemoteException {
-        return server.isAdmin(username);
+        return server.isAdmin(session);
     }
 
     public boolean deleteGroup(String groupName) throws RemoteException {
-        return server.deleteGroup(groupName, username);
+        return server.deleteGroup(session, groupName);
     }
 
 }
@@ -1,30 +1,96 @@
 package chat;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.rmi.AccessException;
 import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
+import java.sql.SQLTimeoutException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import chat.database.DatabaseManager;
+import chat.database.UploadStore;
+import chat.server.HeartbeatMonitor;
+import chat.server.NotificationDispatcher;
+import chat.server.OfflineQueue;
+import chat.server.PresenceRegistry;
+import chat.server.RateLimiter;
+import chat.server.SendAdmission;
+import chat.server.SessionTokens;
+import chat.server.UnreadCounters;
 import chat.info.*;
 import chat.utils.*;
 
-public class ChatServer extends UnicastRemoteObject implements IChatServer {
+// Não se exporta sozinho: ChatTransport.serve publica um proxy dele no RMI ou no NIO
+public class ChatServer implements IChatServer {
     private final Map<String, UserInfo> users = new HashMap<>(); // username -> UserInfo
-    private final Map<String, IChatClient> onlineUsers = new HashMap<>(); // username -> client instance
     private final Map<String, GroupInfo> groups = new HashMap<>(); // Mapeia o nome do grupo para o objeto Group
     private Map<String, List<MessageInfo>> messageHistory = new ConcurrentHashMap<>();
     private final DatabaseManager dbManager = new DatabaseManager();
-    private Map<String, IChatClient> clientMap = new HashMap<>();
+    private final PresenceRegistry presence = new PresenceRegistry(); // username -> sessão (callback, época)
+    private final SessionTokens sessions = new SessionTokens(); // token -> quem chamou (nome, admin)
 
     private Map<String, FileInfo> storedFiles = new ConcurrentHashMap<>();
+    private final NotificationDispatcher notifier = new NotificationDispatcher(
+            Config.getInt("whatsut.notify.maxConcurrent", 64),
+            Config.getLong("whatsut.notify.timeoutMs", 5000),
+            Config.getInt("whatsut.notify.queueCapacity", 100));
+    private final UnreadCounters unread = new UnreadCounters(dbManager);
+    // Limites de envio por usuário e por grupo, e recusa global quando o escritor do SQLite está atrasado
+    private final SendAdmission admission = SendAdmission.fromConfig(dbManager::getWritesInFlight);
+    private final HeartbeatMonitor heartbeat = new HeartbeatMonitor(presence,
+            Config.getLong("whatsut.heartbeat.intervalMs", 15000),
+            Config.getLong("whatsut.heartbeat.timeoutMs", 3000),
+            Config.getInt("whatsut.heartbeat.maxFailures", 2),
+            session -> {
+                sessions.revoke(session.getUsername(), session.getEpoch());
+                notifier.discard(session.getUsername());
+                unread.forget(session.getUsername());
+            });
+    private final OfflineQueue offlineQueue = new OfflineQueue(dbManager, notifier,
+            Config.getInt("whatsut.offline.memoryCap", 256),
+            Config.getInt("whatsut.offline.batchSize", 200));
+    private final UploadStore uploads = new UploadStore(
+            Paths.get(Config.getString("whatsut.upload.dir", "uploads")),
+            Config.getLong("whatsut.upload.maxBytes", 512L * 1024 * 1024),
+            Config.getLong("whatsut.upload.idleTimeoutMs", 30L * 60 * 1000));
 
     public ChatServer() throws RemoteException {
-        super();
         // Usuários iniciais com nome de usuário, senha e e-mail
         users.put("user1", new UserInfo("user1", HashUtil.generateHash("password1"), "user1@mail.com"));
         users.put("user2", new UserInfo("user2", HashUtil.generateHash("password2"), "user2@mail.com"));
+        heartbeat.start(); // Encerra sessões de clientes que pararam de responder
+        registerMetrics();
+    }
+
+    // Medidores lidos só quando alguém pede o relatório (getServerStats)
+    private void registerMetrics() {
+        Metrics.gauge("online.users", presence::size);
+        Metrics.gauge("sessions.tokens", sessions::size);
+        Metrics.gauge("db.write.inFlight", dbManager::getWritesInFlight);
+        Metrics.gauge("db.write.queueDepth", dbManager::getWriteQueueDepth);
+        Metrics.gauge("db.write.rejected", dbManager::getRejectedWrites);
+        Metrics.gauge("db.groupCache.hits", dbManager::getGroupCacheHits);
+        Metrics.gauge("db.groupCache.misses", dbManager::getGroupCacheMisses);
+        Metrics.gauge("db.groupCache.hitRatePct", () -> {
+            long hits = dbManager.getGroupCacheHits();
+            long total = hits + dbManager.getGroupCacheMisses();
+            return total == 0 ? 0 : hits * 100 / total;
+        });
+        Metrics.gauge("notify.pending", notifier::getPendingCount);
+        Metrics.gauge("notify.delivered", notifier::getDeliveredCount);
+        Metrics.gauge("notify.dropped", notifier::getDroppedCount);
+        Metrics.gauge("notify.failed", notifier::getFailedCount);
+        Metrics.gauge("offline.pendingUsers", offlineQueue::getPendingUsers);
+        Metrics.gauge("uploads.active", uploads::getActiveUploads);
+        Metrics.gauge("limit.user.rejected", admission.getUserLimiter()::getRejectedCount);
+        Metrics.gauge("limit.group.rejected", admission.getGroupLimiter()::getRejectedCount);
+        Metrics.gauge("limit.busy", admission::getBusyCount);
+        Metrics.gauge("auth.hash.queueDepth", dbManager.getPasswordHasher()::getQueueDepth);
+        Metrics.gauge("auth.hash.rejected", dbManager.getPasswordHasher()::getRejectedCount);
+        Metrics.gauge("rmi.bytes.beforeCompression", CompressedRmiSockets::getBytesBeforeCompression);
+        Metrics.gauge("rmi.bytes.afterCompression", CompressedRmiSockets::getBytesAfterCompression);
     }
 
     // @Override
@@ -61,18 +127,37 @@ public class ChatServer extends UnicastRemoteObject implements IChatServer {
     }
 
     @Override
-    public boolean login(String username, String password, IChatClient client) throws RemoteException {
-        if (dbManager.login(username, password)) {
-            onlineUsers.put(username, client);
-            System.out.println(username + " logged in.");
-            return true;
+    public SessionToken openSession(String username, String password, IChatClient client) throws RemoteException {
+        if (!dbManager.login(username, password)) {
+            return null;
         }
-        return false;
+        long epoch = presence.login(username, client);
+        // O papel é lido uma vez aqui; as chamadas com o token não voltam ao banco para isso
+        SessionToken token = sessions.issue(username, dbManager.isAdmin(username), epoch);
+        offlineQueue.deliver(username, client); // O que chegou enquanto estava offline
+        System.out.println(username + " logged in.");
+        return token;
     }
 
     @Override
-    public void logout(String username) throws RemoteException {
-        onlineUsers.remove(username);
+    public void logout(SessionToken session) throws RemoteException {
+        endSession(principalOf(session).getUsername());
+    }
+
+    // Dono do token; AccessException se ele não existe ou já foi revogado
+    private SessionTokens.Principal principalOf(SessionToken session) throws AccessException {
+        SessionTokens.Principal principal = sessions.principal(session);
+        if (principal == null) {
+            throw new AccessException("Sessão inválida ou encerrada");
+        }
+        return principal;
+    }
+
+    // Revoga o token e tira o usuário da lista de online
+    private void endSession(String username) {
+        sessions.revoke(username);
+        presence.logout(username);
+        unread.forget(username);
         System.out.println(username + " logged out.");
     }
 
@@ -83,7 +168,7 @@ public class ChatServer extends UnicastRemoteObject implements IChatServer {
 
     @Override
     public List<String> listOnlineUsers() throws RemoteException {
-        return new ArrayList<>(onlineUsers.keySet());
+        return presence.listOnline(); // Snapshot imutável, sem lock
     }
 
     @Override
@@ -124,132 +209,295 @@ public class ChatServer extends UnicastRemoteObject implements IChatServer {
         return users.get(0) + "_" + users.get(1);
     }
 
-    // @Override
-    // public FileInfo receiveFile(String sender, String recipient, String fileName)
-    // throws RemoteException {
-    // String key = getChatKey(sender, recipient);
+    @Override
+    public SendResult sendMessage(SessionToken session, String recipient, String message, long clientMessageId)
+            throws RemoteException {
+        String sender = principalOf(session).getUsername();
+        MessageInfo msg = new MessageInfo(sender, recipient, message, System.currentTimeMillis());
+        msg.setClientMessageId(clientMessageId);
+        return sendPrivate(msg);
+    }
 
-    // List<MessageInfo> messages = messageHistory.getOrDefault(key, new
-    // ArrayList<>());
+    @Override
+    public SendResult sendFile(SessionToken session, String recipient, FileInfo file) throws RemoteException {
+        String sender = principalOf(session).getUsername();
+        return sendPrivate(new MessageInfo(sender, recipient, file, System.currentTimeMillis()));
+    }
 
-    // for (Map.Entry<String, List<MessageInfo>> entry : messageHistory.entrySet())
-    // {
-    // System.out.println("Key: " + entry.getKey());
-    // }
+    // Grava a mensagem (texto ou arquivo) e a entrega, se os limites de envio deixarem
+    private SendResult sendPrivate(MessageInfo msg) {
+        SendResult refused = admission.admit(msg.getSender(), null);
+        if (refused != null) {
+            return refused;
+        }
+        MessageInfo stored;
+        try {
+            // Só a chamada que insere a mensagem a entrega (callback em segundo plano); um
+            // reenvio do mesmo id devolve o id já gravado sem entregar de novo
+            stored = dbManager.storeMessage(msg, this::deliverOrQueue);
+        } catch (SQLTimeoutException e) {
+            return SendResult.pending(); // Ainda na fila: se for gravada, é entregue nessa hora
+        }
+        return stored != null ? SendResult.sent(stored.getId()) : SendResult.failed();
+    }
 
-    // for (MessageInfo msg : messages) {
+    // As leituras abaixo usam sempre o dono da sessão como um dos lados da conversa
+    @Override
+    public List<MessageInfo> getMessageHistory(SessionToken session, String peer) throws RemoteException {
+        // Busca o histórico no banco de dados
+        return dbManager.getMessageHistory(principalOf(session).getUsername(), peer);
+    }
 
-    // if (msg.isFile() && msg.getFile().getFileName().equals(fileName)) {
-    // return msg.getFile(); // Retorna o arquivo encontrado
-    // }
-    // }
-    // return null; // Retorna null se o arquivo não existir no histórico
-    // }
+    @Override
+    public List<MessageInfo> getLatestMessages(SessionToken session, String peer, int limit) throws RemoteException {
+        return dbManager.getLatestMessages(principalOf(session).getUsername(), peer, limit);
+    }
 
     @Override
-    public void sendMessage(String sender, String recipient, String message) throws RemoteException {
-        long timestamp = System.currentTimeMillis();
-        MessageInfo msg = new MessageInfo(sender, recipient, message, timestamp);
-        dbManager.storeMessage(msg); // Agora armazenamos no banco de dados
+    public List<MessageInfo> getMessagesBefore(SessionToken session, String peer, long beforeId, int limit)
+            throws RemoteException {
+        return dbManager.getMessagesBefore(principalOf(session).getUsername(), peer, beforeId, limit);
+    }
 
-        IChatClient recipientClient = getClientByUsername(recipient); // Você deve implementar isso
-        if (recipientClient != null) {
-            recipientClient.notifyNewMessage(sender); // Chama o callback no cliente
+    @Override
+    public List<MessageInfo> getMessagesAfter(SessionToken session, String peer, long afterId, int limit)
+            throws RemoteException {
+        return dbManager.getMessagesAfter(principalOf(session).getUsername(), peer, afterId, limit);
+    }
+
+    @Override
+    public Map<String, Integer> getUnreadSummary(SessionToken session) throws RemoteException {
+        return unread.summary(principalOf(session).getUsername());
+    }
+
+    @Override
+    public boolean markConversationRead(SessionToken session, String peer, long upToId) throws RemoteException {
+        return unread.markRead(principalOf(session).getUsername(), peer, upToId);
+    }
+
+    @Override
+    public FileInfo getAttachment(SessionToken session, long messageId) throws RemoteException {
+        return dbManager.getAttachment(messageId, principalOf(session).getUsername());
+    }
+
+    @Override
+    public String beginUpload(SessionToken session, String recipient, String fileName, long size, String sha256)
+            throws RemoteException {
+        String sender = principalOf(session).getUsername();
+        if (admission.admit(sender, null) != null) {
+            System.out.println("⚠️ Upload de " + sender + " recusado pelo limite de envios");
+            return null;
+        }
+        try {
+            UploadStore.Upload upload = uploads.begin(sender, recipient, fileName, size, sha256);
+            return upload != null ? upload.getId() : null;
+        } catch (IOException e) {
+            throw new RemoteException("Erro ao iniciar upload", e);
         }
     }
 
     @Override
-    public void sendFile(String sender, String recipient, FileInfo file) throws RemoteException {
-        long timestamp = System.currentTimeMillis();
-        MessageInfo msg = new MessageInfo(sender, recipient, file, timestamp);
-        dbManager.storeMessage(msg); // Também armazenamos arquivos no banco
+    public long getUploadOffset(String uploadId) throws RemoteException {
+        return uploads.offset(uploadId);
+    }
 
-        IChatClient recipientClient = getClientByUsername(recipient); // Você deve implementar isso
-        if (recipientClient != null) {
-            recipientClient.notifyNewMessage(sender); // Chama o callback no cliente
+    @Override
+    public long uploadChunk(String uploadId, long offset, byte[] chunk) throws RemoteException {
+        try {
+            return uploads.append(uploadId, offset, chunk);
+        } catch (IOException e) {
+            throw new RemoteException("Erro ao gravar parte do upload", e);
         }
     }
 
     @Override
-    public List<MessageInfo> getMessageHistory(String user1, String user2) throws RemoteException {
-        return dbManager.getMessageHistory(user1, user2); // Busca o histórico no banco de dados
+    public boolean finishUpload(String uploadId) throws RemoteException {
+        UploadStore.Upload upload;
+        try {
+            upload = uploads.complete(uploadId);
+        } catch (IOException e) {
+            throw new RemoteException("Erro ao concluir upload", e);
+        }
+        if (upload == null) {
+            return false; // Sessão inexistente, incompleta ou com hash diferente
+        }
+
+        MessageInfo stored;
+        try {
+            if (upload.isToGroup()) {
+                stored = dbManager.storeGroupFile(upload.getRecipient(), upload.getSender(), upload.getFileName(),
+                        upload.getFile(), upload.getHash(), System.currentTimeMillis());
+            } else {
+                stored = dbManager.storeFile(upload.getSender(), upload.getRecipient(), upload.getFileName(),
+                        upload.getFile(), upload.getHash(), System.currentTimeMillis());
+            }
+        } finally {
+            uploads.discard(upload);
+        }
+
+        if (stored != null && upload.isToGroup()) {
+            notifyGroupMembers(stored);
+        } else {
+            deliverOrQueue(stored);
+        }
+        return stored != null;
     }
 
     @Override
-    public FileInfo receiveFile(String sender, String recipient, String fileName) throws RemoteException {
-        return dbManager.receiveFile(sender, recipient, fileName); // Busca um arquivo específico no banco
+    public String beginGroupUpload(SessionToken session, String groupName, String fileName, long size,
+            String sha256) throws RemoteException {
+        String sender = principalOf(session).getUsername();
+        if (!dbManager.getGroupMembers(groupName).contains(sender)) {
+            return null; // Só membros enviam arquivos ao grupo
+        }
+        if (admission.admit(sender, groupName) != null) {
+            System.out.println("⚠️ Upload de " + sender + " para " + groupName + " recusado pelo limite de envios");
+            return null;
+        }
+        try {
+            UploadStore.Upload upload = uploads.begin(sender, groupName, true, fileName, size, sha256);
+            return upload != null ? upload.getId() : null;
+        } catch (IOException e) {
+            throw new RemoteException("Erro ao iniciar upload", e);
+        }
     }
 
     @Override
-    public boolean createGroup(String groupName, String description, String owner) throws RemoteException {
-        return dbManager.createGroup(groupName, description, owner);
+    public byte[] downloadGroupChunk(SessionToken session, long messageId, long offset, int length)
+            throws RemoteException {
+        String username = principalOf(session).getUsername();
+        if (offset < 0 || length <= 0) {
+            return null; // Pedido malformado: mesma resposta de anexo não encontrado
+        }
+        return dbManager.readGroupAttachmentChunk(messageId, username, offset, length);
     }
 
     @Override
-    public boolean requestJoinGroup(String groupName, String username) throws RemoteException {
-        return dbManager.requestJoinGroup(groupName, username);
+    public byte[] downloadChunk(SessionToken session, long messageId, long offset, int length)
+            throws RemoteException {
+        String username = principalOf(session).getUsername();
+        if (offset < 0 || length <= 0) {
+            return null;
+        }
+        return dbManager.readAttachmentChunk(messageId, username, offset, length);
     }
 
     @Override
-    public boolean approveJoinRequest(String groupName, String owner, String username, boolean approve)
+    public boolean createGroup(SessionToken session, String groupName, String description) throws RemoteException {
+        return dbManager.createGroup(groupName, description, principalOf(session).getUsername());
+    }
+
+    @Override
+    public boolean requestJoinGroup(SessionToken session, String groupName) throws RemoteException {
+        return dbManager.requestJoinGroup(groupName, principalOf(session).getUsername());
+    }
+
+    @Override
+    public boolean approveJoinRequest(SessionToken session, String groupName, String username, boolean approve)
             throws RemoteException {
-        boolean result = dbManager.approveJoinRequest(groupName, owner, username, approve);
+        SessionTokens.Principal principal = principalOf(session);
+        if (!managesGroup(principal, groupName)) {
+            System.out.println("❌ Aprovação no grupo '" + groupName + "' negada para " + principal.getUsername());
+            return false;
+        }
+        boolean result = dbManager.approveJoinRequest(groupName, principal.getUsername(), username, approve);
         if (result) {
-            IChatClient memberClient = getClientByUsername(username);
-            if (memberClient != null) {
-                memberClient.notifyGroupJoinApproval(groupName, approve);
-            }
+            notifyClient(username, client -> client.notifyGroupJoinApproval(groupName, approve));
         }
 
         return result;
     }
 
     @Override
-    public List<String> getPendingRequests(String groupName) throws RemoteException {
+    public List<String> getPendingRequests(SessionToken session, String groupName) throws RemoteException {
+        if (!managesGroup(principalOf(session), groupName)) {
+            return List.of();
+        }
         return dbManager.getPendingRequests(groupName);
     }
 
+    // Dono do grupo ou admin (o papel vem do token, o dono vem do cache de grupos)
+    private boolean managesGroup(SessionTokens.Principal principal, String groupName) {
+        GroupInfo group = dbManager.getGroupInfo(groupName);
+        return group != null && (group.getOwner().equals(principal.getUsername()) || principal.isAdmin());
+    }
+
+    // Membro do grupo (ou admin), para ler o histórico do grupo
+    private boolean readsGroup(SessionTokens.Principal principal, String groupName) {
+        return principal.isAdmin() || dbManager.getGroupMembers(groupName).contains(principal.getUsername());
+    }
+
     @Override
     public List<String> listGroups() throws RemoteException {
         return dbManager.listGroups();
     }
 
     @Override
-    public void sendGroupMessage(String groupName, String sender, String message) throws RemoteException {
-        dbManager.sendGroupMessage(groupName, sender, message);
-        System.out.println("Mensagem: " + message);
-        GroupInfo group = dbManager.getGroupInfo(groupName);
-        if (group != null) {
-            // Notifica todos os membros do grupo sobre a nova mensagem
-            for (String member : group.getMembers()) {
-                IChatClient memberClient = getClientByUsername(member);
-                if (memberClient != null) {
-                    memberClient.notifyNewMessage(groupName); // Chama o callback no cliente
-                }
+    public SendResult sendGroupMessage(SessionToken session, String groupName, String message)
+            throws RemoteException {
+        return sendToGroup(groupName, principalOf(session).getUsername(), message);
+    }
+
+    private SendResult sendToGroup(String groupName, String sender, String message) {
+        SendResult refused = admission.admit(sender, groupName);
+        if (refused != null) {
+            return refused;
+        }
+        MessageInfo stored = dbManager.sendGroupMessage(groupName, sender, message);
+        if (stored == null) {
+            return SendResult.failed();
+        }
+        notifyGroupMembers(stored);
+        return SendResult.sent(stored.getId());
+    }
+
+    // Notifica os outros membros do grupo com a mensagem, sem esperar por eles
+    // (os membros vêm do cache de grupos, sem consulta ao banco)
+    private void notifyGroupMembers(MessageInfo stored) {
+        String groupName = stored.getRecipient();
+        for (String member : dbManager.getGroupMembers(groupName)) {
+            if (!member.equals(stored.getSender())) {
+                notifyClient(member, client -> client.notifyNewGroupMessage(groupName, stored));
             }
         }
     }
 
     @Override
-    public List<String> getGroupMessages(String groupName) throws RemoteException {
-        return dbManager.getGroupMessages(groupName);
+    public List<MessageInfo> getGroupMessages(SessionToken session, String groupName, long beforeId, int limit)
+            throws RemoteException {
+        if (!readsGroup(principalOf(session), groupName)) {
+            return List.of();
+        }
+        return dbManager.getGroupMessages(groupName, beforeId, limit);
     }
 
     @Override
-    public boolean leaveGroup(String groupName, String username) throws RemoteException {
-        return dbManager.removeGroupMember(groupName, username);
+    public List<MessageInfo> getGroupMessagesAfter(SessionToken session, String groupName, long afterId, int limit)
+            throws RemoteException {
+        if (!readsGroup(principalOf(session), groupName)) {
+            return List.of();
+        }
+        return dbManager.getGroupMessagesAfter(groupName, afterId, limit);
     }
 
     @Override
-    public boolean deleteGroup(String groupName, String requestingUser) throws RemoteException {
+    public boolean leaveGroup(SessionToken session, String groupName) throws RemoteException {
+        return dbManager.removeGroupMember(groupName, principalOf(session).getUsername());
+    }
+
+    @Override
+    public boolean deleteGroup(SessionToken session, String groupName) throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        String requestingUser = principal.getUsername();
         GroupInfo group = dbManager.getGroupInfo(groupName);
         if (group == null)
             return false;
 
         // Permite se for o dono OU se for admin
-        if (group.getOwner().equals(requestingUser) || isAdmin(requestingUser)) {
+        if (group.getOwner().equals(requestingUser) || principal.isAdmin()) {
             boolean deleted = dbManager.deleteGroup(groupName);
             if (deleted) {
+                admission.getGroupLimiter().forget(groupName);
                 System.out.println("✅ Grupo '" + groupName + "' deletado por " + requestingUser);
             }
             return deleted;
@@ -260,13 +508,18 @@ public class ChatServer extends UnicastRemoteObject implements IChatServer {
     }
 
     @Override
-    public boolean removeUserFromGroup(String groupName, String userToRemove) throws RemoteException {
+    public boolean removeUserFromGroup(SessionToken session, String groupName, String userToRemove)
+            throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        // Quem sai por conta própria não precisa ser o dono
+        if (!userToRemove.equals(principal.getUsername()) && !managesGroup(principal, groupName)) {
+            System.out.println("❌ Remoção de " + userToRemove + " do grupo '" + groupName + "' negada para "
+                    + principal.getUsername());
+            return false;
+        }
         boolean removed = dbManager.removeGroupMember(groupName, userToRemove);
         if (removed) {
-            IChatClient memberClient = getClientByUsername(userToRemove);
-            if (memberClient != null) {
-                memberClient.notifyGroupRemoval(groupName);
-            }
+            notifyClient(userToRemove, client -> client.notifyGroupRemoval(groupName));
         }
 
         return removed;
@@ -278,54 +531,124 @@ public class ChatServer extends UnicastRemoteObject implements IChatServer {
     }
 
     @Override
-    public boolean changeGroupOwner(String groupName, String newOwner) throws RemoteException {
+    public boolean changeGroupOwner(SessionToken session, String groupName, String newOwner)
+            throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        if (!managesGroup(principal, groupName)) {
+            System.out.println("❌ Troca de dono do grupo '" + groupName + "' negada para " + principal.getUsername());
+            return false;
+        }
         boolean changed = dbManager.changeGroupOwner(groupName, newOwner);
-        IChatClient memberClient = getClientByUsername(newOwner);
         if (changed) {
-            if (memberClient != null) {
-                memberClient.notifyNewGroupOwner(groupName);
-            }
+            notifyClient(newOwner, client -> client.notifyNewGroupOwner(groupName));
         }
 
         return changed;
     }
 
-    // Registra o cliente quando ele se conecta
-    public void registerClient(String username, IChatClient client) throws RemoteException {
-        clientMap.put(username, client);
+    // Registra (ou troca) o callback da sessão
+    @Override
+    public void registerClient(SessionToken session, IChatClient client) throws RemoteException {
+        String username = principalOf(session).getUsername();
+        presence.attach(username, client);
+        offlineQueue.deliver(username, client);
     }
 
-    // Remove o cliente quando ele se desconecta
-    public void unregisterClient(String username) throws RemoteException {
-        clientMap.remove(username);
+    // Remove o callback da sessão, mantendo o usuário online
+    @Override
+    public void unregisterClient(SessionToken session) throws RemoteException {
+        presence.detach(principalOf(session).getUsername());
     }
 
     private IChatClient getClientByUsername(String username) {
-        return clientMap.get(username);
+        return presence.client(username);
+    }
+
+    // Avisa o destinatário se ele estiver conectado; se o aviso não chegar (offline,
+    // falha ou prazo) a mensagem entra na fila de entregas pendentes e é enviada quando ele voltar
+    private void deliverOrQueue(MessageInfo stored) {
+        if (stored == null) {
+            return; // Não foi gravada
+        }
+        unread.messageStored(stored);
+        String recipient = stored.getRecipient();
+        notifier.dispatch(recipient, getClientByUsername(recipient), client -> client.notifyNewMessage(stored),
+                () -> offlineQueue.enqueue(recipient, stored.getId()));
+    }
+
+    // Enfileira o callback para o cliente de username (se estiver conectado) e retorna na hora
+    private void notifyClient(String username, NotificationDispatcher.Notification notification) {
+        notifier.dispatch(username, getClientByUsername(username), notification);
     }
 
     @Override
-    public boolean deleteUser(String targetUsername, String requestingUsername) throws RemoteException {
+    public boolean deleteUser(SessionToken session, String targetUsername) throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        String requestingUsername = principal.getUsername();
         // Verifica permissões
-        if (!targetUsername.equals(requestingUsername) && !isAdmin(requestingUsername)) {
+        if (!targetUsername.equals(requestingUsername) && !principal.isAdmin()) {
             System.out.println("❌ Acesso negado: " + requestingUsername + " tentou deletar " + targetUsername);
             return false;
         }
 
-        // Primeiro desloga o usuário alvo se estiver online
-        logout(targetUsername);
-        unregisterClient(targetUsername);
-
         // Remove do banco de dados (cascade manual)
         boolean deleted = dbManager.deleteUser(targetUsername);
         if (deleted) {
+            endSession(targetUsername); // Só desloga o alvo depois que a exclusão deu certo
+            unread.forgetPeer(targetUsername);
+            admission.getUserLimiter().forget(targetUsername);
             System.out.println("✅ Usuário deletado: " + targetUsername + " (por " + requestingUsername + ")");
         }
         return deleted;
     }
 
     @Override
-    public boolean isAdmin(String username) throws RemoteException {
-        return dbManager.isAdmin(username);
+    public boolean isAdmin(SessionToken session) throws RemoteException {
+        return principalOf(session).isAdmin();
+    }
+
+    @Override
+    public boolean setRateLimit(SessionToken session, String scope, int perSecond, int burst)
+            throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        RateLimiter limiter = switch (scope) {
+            case "user" -> admission.getUserLimiter();
+            case "group" -> admission.getGroupLimiter();
+            default -> null;
+        };
+        if (!principal.isAdmin() || limiter == null) {
+            System.out.println("❌ Ajuste de limite '" + scope + "' negado para " + principal.getUsername());
+            return false;
+        }
+        limiter.setLimits(perSecond, burst);
+        return true;
+    }
+
+    @Override
+    public boolean setMaxQueuedWrites(SessionToken session, int maxQueuedWrites) throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        if (!principal.isAdmin()) {
+            System.out.println("❌ Ajuste do limite de escritas negado para " + principal.getUsername());
+            return false;
+        }
+        admission.setMaxQueuedWrites(maxQueuedWrites);
+        return true;
+    }
+
+    @Override
+    public String getServerStats(SessionToken session) throws RemoteException {
+        SessionTokens.Principal principal = principalOf(session);
+        if (!principal.isAdmin()) {
+            System.out.println("❌ Estatísticas do servidor negadas para " + principal.getUsername());
+            return null;
+        }
+        return Metrics.report();
+    }
+
+    // Encerra as notificações pendentes, a thread de escrita (se houver) e o pool de conexões
+    public void shutdown() {
+        heartbeat.shutdown();
+        notifier.shutdown();
+        dbManager.close();
     }
 }
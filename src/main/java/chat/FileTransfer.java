@@ -0,0 +1,138 @@
+package chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import chat.info.FileInfo;
+import chat.info.SessionToken;
+import chat.utils.HashUtil;
+
+// Lado cliente da transferência em partes: lê e grava o arquivo aos pedaços de
+// FileInfo.CHUNK_SIZE, retoma do offset do servidor quando uma chamada falha e
+// confere o SHA-256 no fim. A memória usada não depende do tamanho do arquivo.
+public class FileTransfer {
+    private static final int MAX_RETRIES = 3;
+
+    // Lê uma parte do anexo no servidor (conversa privada ou grupo)
+    @FunctionalInterface
+    private interface ChunkSource {
+        byte[] read(long offset) throws RemoteException;
+    }
+
+    // Envia o arquivo como mensagem para recipient; retorna false se o servidor recusar
+    public static boolean upload(IChatServer server, SessionToken session, String recipient, Path file)
+            throws IOException {
+        long size = Files.size(file);
+        String uploadId = server.beginUpload(session, recipient, file.getFileName().toString(), size,
+                HashUtil.sha256Hex(file));
+        return uploadId != null && send(server, uploadId, file, size);
+    }
+
+    // Envia o arquivo ao grupo; retorna false se o servidor recusar (ex.: quem envia não é membro)
+    public static boolean uploadToGroup(IChatServer server, SessionToken session, String groupName, Path file)
+            throws IOException {
+        long size = Files.size(file);
+        String uploadId = server.beginGroupUpload(session, groupName, file.getFileName().toString(), size,
+                HashUtil.sha256Hex(file));
+        return uploadId != null && send(server, uploadId, file, size);
+    }
+
+    private static boolean send(IChatServer server, String uploadId, Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(FileInfo.CHUNK_SIZE);
+            long offset = 0;
+            int failures = 0;
+
+            while (offset < size) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - offset)); // Nunca além do tamanho anunciado
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    return false; // O arquivo encolheu durante o envio
+                }
+                byte[] chunk = read == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), read);
+
+                try {
+                    long next = server.uploadChunk(uploadId, offset, chunk);
+                    if (next == offset || next > size) {
+                        return false; // O servidor não aceitou a parte; reenviar não sairia do lugar
+                    }
+                    offset = next;
+                    failures = 0;
+                } catch (RemoteException e) {
+                    if (++failures > MAX_RETRIES) {
+                        throw e;
+                    }
+                    offset = server.getUploadOffset(uploadId); // Retoma de onde o servidor parou
+                }
+                if (offset < 0) {
+                    return false; // Sessão expirou no servidor
+                }
+            }
+        }
+        return server.finishUpload(uploadId);
+    }
+
+    // Baixa o anexo descrito por attachment para target; retorna false se não for
+    // encontrado ou se o conteúdo não bater com o hash (o arquivo parcial é apagado)
+    public static boolean download(IChatServer server, SessionToken session, FileInfo attachment, Path target)
+            throws IOException {
+        return receive(offset -> server.downloadChunk(session, attachment.getMessageId(), offset,
+                FileInfo.CHUNK_SIZE), attachment, target);
+    }
+
+    // Idem para um anexo enviado a um grupo
+    public static boolean downloadFromGroup(IChatServer server, SessionToken session, FileInfo attachment,
+            Path target) throws IOException {
+        return receive(offset -> server.downloadGroupChunk(session, attachment.getMessageId(), offset,
+                FileInfo.CHUNK_SIZE), attachment, target);
+    }
+
+    private static boolean receive(ChunkSource source, FileInfo attachment, Path target) throws IOException {
+        MessageDigest digest = HashUtil.newSha256();
+        boolean ok = false;
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = 0;
+            int failures = 0;
+
+            while (offset < attachment.getSize()) {
+                byte[] chunk;
+                try {
+                    chunk = source.read(offset);
+                    failures = 0;
+                } catch (RemoteException e) {
+                    if (++failures > MAX_RETRIES) {
+                        throw e;
+                    }
+                    continue; // Pede de novo a mesma parte
+                }
+                if (chunk == null || chunk.length == 0) {
+                    break;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                while (buffer.hasRemaining()) {
+                    offset += channel.write(buffer, offset);
+                }
+                digest.update(chunk);
+            }
+
+            ok = offset == attachment.getSize()
+                    && (attachment.getHash() == null || attachment.getHash().equals(HashUtil.toHex(digest.digest())));
+        } finally {
+            if (!ok) {
+                Files.deleteIfExists(target);
+            }
+        }
+        return ok;
+    }
+}
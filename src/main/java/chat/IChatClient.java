@@ -4,15 +4,11 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 
+import chat.info.MessageInfo;
+
 public interface IChatClient extends Remote { // "extends Remote" faz desta interface um Callback remoto
     public String getUsername() throws RemoteException;
 
-    public List<String> getUnreadMessages(String sender) throws RemoteException;
-
-    public void clearUnreadMessages(String sender) throws RemoteException;
-
-    public void receiveMessage(String sender, String message) throws RemoteException;
-
     public boolean login(String password) throws RemoteException;
 
     public void logout() throws RemoteException;
@@ -22,9 +18,12 @@ public interface IChatClient extends Remote { // "extends Remote" faz desta inte
     public java.util.List<String> getUserList() throws RemoteException;
 
     // Define os métodos que o Servidor pode chamar no Cliente
-    // Quando chega uma mensagem nova, o Servidor percorre a lista e chama para o
-    // método
-    void notifyNewMessage(String sender) throws RemoteException;
+    // Quando chega uma mensagem nova, o Servidor envia a própria mensagem já gravada
+    // (com id), então o cliente exibe sem voltar ao servidor
+    void notifyNewMessage(MessageInfo message) throws RemoteException;
+
+    // Mensagem nova no grupo groupName (message.getRecipient() também é o grupo)
+    void notifyNewGroupMessage(String groupName, MessageInfo message) throws RemoteException;
 
     public void notifyGroupJoinApproval(String groupName, boolean approved) throws RemoteException;
 
@@ -32,5 +31,11 @@ public interface IChatClient extends Remote { // "extends Remote" faz desta inte
 
     public void notifyNewGroupOwner(String groupName) throws RemoteException;
 
+    // Lote com as mensagens privadas que chegaram enquanto o usuário estava offline
+    void deliverPending(List<MessageInfo> messages) throws RemoteException;
+
+    // Chamado periodicamente pelo servidor para saber se o cliente ainda está vivo
+    void ping() throws RemoteException;
+
     public boolean deleteUser(String password) throws RemoteException;
 }
@@ -3,60 +3,136 @@ package chat;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
 import chat.info.FileInfo;
 import chat.info.GroupInfo;
 import chat.info.MessageInfo;
+import chat.info.SendResult;
+import chat.info.SessionToken;
 
 public interface IChatServer extends Remote {
     public boolean registerUser(String username, String password, String email) throws RemoteException;
 
-    boolean login(String username, String password, IChatClient client) throws RemoteException;
+    // Login que devolve o token da sessão (null se usuário ou senha não conferem). As
+    // chamadas que recebem o token identificam quem chamou pela sessão, não por um nome
+    // informado pelo cliente; um token inválido ou revogado gera AccessException.
+    // Os envios passam pelos limites de taxa: uma recusa volta como SendResult com o
+    // tempo de espera.
+    SessionToken openSession(String username, String password, IChatClient client) throws RemoteException;
 
-    void logout(String username) throws RemoteException;
+    void logout(SessionToken session) throws RemoteException;
+
+    // clientMessageId: id do envio escolhido pelo cliente (diferente de 0). Reenviar com o
+    // mesmo id depois de um PENDING (ou de uma resposta perdida) não grava a mensagem de novo
+    SendResult sendMessage(SessionToken session, String recipient, String message, long clientMessageId)
+            throws RemoteException;
+
+    SendResult sendGroupMessage(SessionToken session, String groupName, String message) throws RemoteException;
+
+    boolean deleteGroup(SessionToken session, String groupName) throws RemoteException;
+
+    boolean deleteUser(SessionToken session, String targetUsername) throws RemoteException;
+
+    boolean isAdmin(SessionToken session) throws RemoteException;
+
+    // Ajuste dos limites de envio com o servidor rodando (só admin; false se negado).
+    // scope: "user" ou "group"; perSecond = 0 desliga o limite
+    boolean setRateLimit(SessionToken session, String scope, int perSecond, int burst) throws RemoteException;
+
+    // Escritas pendentes no SQLite a partir das quais todo envio é recusado (0 desliga)
+    boolean setMaxQueuedWrites(SessionToken session, int maxQueuedWrites) throws RemoteException;
+
+    // Relatório em texto (só admin; null se negado): latência de cada chamada e de cada
+    // consulta ao banco em percentis, usuários online, filas e taxa de acerto dos caches
+    String getServerStats(SessionToken session) throws RemoteException;
 
     List<String> listUsers() throws RemoteException; // Retorna todos os usuários
 
     List<String> listOnlineUsers() throws RemoteException; // Retorna apenas os usuários online
 
-    public void sendMessage(String sender, String recipient, String message) throws RemoteException;
+    // Conversa entre o dono da sessão e peer
+    public List<MessageInfo> getMessageHistory(SessionToken session, String peer) throws RemoteException;
 
-    public List<MessageInfo> getMessageHistory(String user1, String user2) throws RemoteException;
+    // Histórico paginado por cursor (id da mensagem). As páginas vêm em ordem
+    // cronológica e têm no máximo 'limit' mensagens; uma página menor que o
+    // limite indica que não há mais mensagens naquela direção.
+    public List<MessageInfo> getLatestMessages(SessionToken session, String peer, int limit) throws RemoteException;
 
-    public FileInfo receiveFile(String sender, String recipient, String fileName) throws RemoteException;
+    public List<MessageInfo> getMessagesBefore(SessionToken session, String peer, long beforeId, int limit)
+            throws RemoteException;
 
-    public boolean createGroup(String groupName, String description, String owner) throws RemoteException;
+    public List<MessageInfo> getMessagesAfter(SessionToken session, String peer, long afterId, int limit)
+            throws RemoteException;
 
-    public boolean requestJoinGroup(String groupName, String username) throws RemoteException;
+    // Não lidas do dono da sessão por remetente (só conversas com alguma não lida), numa única chamada
+    Map<String, Integer> getUnreadSummary(SessionToken session) throws RemoteException;
 
-    public boolean approveJoinRequest(String groupName, String owner, String username, boolean approve)
+    // Marca como lidas as mensagens de peer para o dono da sessão até upToId; o cursor só avança
+    boolean markConversationRead(SessionToken session, String peer, long upToId) throws RemoteException;
+
+    // O histórico traz só o descritor do anexo; o conteúdo é buscado aqui, pelo id da mensagem
+    FileInfo getAttachment(SessionToken session, long messageId) throws RemoteException;
+
+    // Transferência em partes de até FileInfo.CHUNK_SIZE bytes. beginUpload devolve o id da
+    // sessão (null se recusado); uploadChunk devolve o novo offset, ou o offset atual do
+    // servidor quando a parte não começa nele, e -1 se a sessão não existe mais.
+    // finishUpload confere tamanho e SHA-256 antes de gravar a mensagem.
+    String beginUpload(SessionToken session, String recipient, String fileName, long size, String sha256)
             throws RemoteException;
 
-    public List<String> listGroups() throws RemoteException;
+    long getUploadOffset(String uploadId) throws RemoteException;
 
-    void sendGroupMessage(String groupName, String sender, String message) throws RemoteException;
+    long uploadChunk(String uploadId, long offset, byte[] chunk) throws RemoteException;
 
-    List<String> getGroupMessages(String groupName) throws RemoteException;
+    boolean finishUpload(String uploadId) throws RemoteException;
 
-    boolean leaveGroup(String groupName, String username) throws RemoteException;
+    // Parte do anexo a partir de offset; vazio no fim do arquivo, null se não encontrado
+    byte[] downloadChunk(SessionToken session, long messageId, long offset, int length) throws RemoteException;
 
-    GroupInfo getGroupInfo(String groupName) throws RemoteException;
+    // Mesma transferência em partes para anexos de grupo (só membros podem enviar e baixar);
+    // o upload segue com getUploadOffset, uploadChunk e finishUpload
+    String beginGroupUpload(SessionToken session, String groupName, String fileName, long size, String sha256)
+            throws RemoteException;
+
+    byte[] downloadGroupChunk(SessionToken session, long messageId, long offset, int length) throws RemoteException;
+
+    // O dono da sessão passa a ser o dono do grupo
+    public boolean createGroup(SessionToken session, String groupName, String description) throws RemoteException;
+
+    public boolean requestJoinGroup(SessionToken session, String groupName) throws RemoteException;
+
+    // Só o dono do grupo (ou um admin) aprova, remove membros, troca o dono e vê as solicitações
+    public boolean approveJoinRequest(SessionToken session, String groupName, String username, boolean approve)
+            throws RemoteException;
 
-    public boolean removeUserFromGroup(String groupName, String userToRemove) throws RemoteException;
+    public List<String> listGroups() throws RemoteException;
+
+    // Histórico do grupo paginado como o privado: até 'limit' mensagens com id menor que
+    // beforeId (Long.MAX_VALUE para a página mais recente), em ordem cronológica.
+    // Só membros leem o histórico (lista vazia para os demais)
+    List<MessageInfo> getGroupMessages(SessionToken session, String groupName, long beforeId, int limit)
+            throws RemoteException;
 
-    public boolean deleteGroup(String groupName, String requestingUser) throws RemoteException;
+    // Delta do grupo: até 'limit' mensagens com id maior que afterId, em ordem cronológica
+    List<MessageInfo> getGroupMessagesAfter(SessionToken session, String groupName, long afterId, int limit)
+            throws RemoteException;
 
-    public boolean changeGroupOwner(String groupName, String newOwner) throws RemoteException;
+    boolean leaveGroup(SessionToken session, String groupName) throws RemoteException;
 
-    public void sendFile(String sender, String recipient, FileInfo file) throws RemoteException;
+    GroupInfo getGroupInfo(String groupName) throws RemoteException;
+
+    public boolean removeUserFromGroup(SessionToken session, String groupName, String userToRemove)
+            throws RemoteException;
 
-    public void registerClient(String username, IChatClient client) throws RemoteException;
+    public boolean changeGroupOwner(SessionToken session, String groupName, String newOwner) throws RemoteException;
 
-    public void unregisterClient(String username) throws RemoteException;
+    SendResult sendFile(SessionToken session, String recipient, FileInfo file) throws RemoteException;
 
-    public boolean deleteUser(String targetUsername, String requestingUsername) throws RemoteException;
+    // Troca o callback da sessão (o login já registra o que foi passado a ele)
+    void registerClient(SessionToken session, IChatClient client) throws RemoteException;
 
-    public boolean isAdmin(String username) throws RemoteException;
+    void unregisterClient(SessionToken session) throws RemoteException;
 
-    public List<String> getPendingRequests(String groupName) throws RemoteException;
+    public List<String> getPendingRequests(SessionToken session, String groupName) throws RemoteException;
 }
@@ -4,6 +4,7 @@ import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -30,12 +31,8 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.Scene;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,24 +40,34 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import chat.*;
 import chat.info.*;
+import chat.transport.ChatTransport;
 
 public class ChatUI {
     private Stage primaryStage;
     private IChatServer server; // Referência ao servidor
-    private Registry registry; // Registro RMI
     private String username; // Nome do usuário logado (opcional, útil para exibições)
     private ChatClient client;
-    private Map<String, TextArea> privateChatWindows = new HashMap<>();
     private Set<String> openChats = new HashSet<>();
     private TextArea chatArea; // Agora é um atributo da classe
     private VBox chatMessages; // Usaremos VBox para suportar botões
     private String currentWindow = null;
     private String currentRecipitent = null;
     private String currentGroup = null;
+    private static final int PAGE_SIZE = 50; // Mensagens por página no chat privado
+    private ScrollPane chatScroll; // Scroll do chat privado aberto
+    private Button loadOlderButton; // Fica no topo do chat enquanto houver páginas anteriores
+    private long oldestLoadedId = Long.MAX_VALUE; // Cursor da página mais antiga já carregada
+    private boolean hasOlderMessages = false;
+    private long newestLoadedId = 0; // Cursor da mensagem mais nova já exibida no chat privado
+    private long newestGroupMessageId = 0; // Idem para o chat de grupo aberto
+    private long readUpToId = 0; // Último id já informado ao servidor como lido no chat privado aberto
+    private Map<String, Integer> unreadCounts = new HashMap<>(); // Remetente -> não lidas, vindo do servidor
+    private ListView<String> usersView; // Lista de usuários exibida, redesenhada quando as não lidas mudam
     private Image imagemFundo = new Image("background.jpg");
     private BackgroundImage backgroundImage = new BackgroundImage(imagemFundo,
             BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
@@ -71,9 +78,8 @@ public class ChatUI {
         this.primaryStage = primaryStage;
         chatMessages = new VBox(10);
         try {
-            // Inicializa o registro e o servidor RMI
-            this.registry = LocateRegistry.getRegistry("localhost", 1099);
-            this.server = (IChatServer) registry.lookup("ChatService");
+            // Conecta ao servidor pelo transporte configurado (RMI ou NIO)
+            this.server = ChatTransport.connect();
         } catch (Exception e) {
             e.printStackTrace();
             showError("Erro ao conectar ao servidor. Verifique se o servidor está em execução.");
@@ -174,8 +180,7 @@ public class ChatUI {
 
                 if (client.login(password)) {
                     statusLabel.setText("Login bem-sucedido!");
-                    this.username = username;
-                    server.registerClient(username, client);
+                    this.username = username; // O callback já foi registrado pelo login
                     showChatWindow(); // Exibe a janela de chat após login bem-sucedido
                 } else {
                     statusLabel.setText("Credenciais inválidas. Tente novamente.");
@@ -243,8 +248,9 @@ public class ChatUI {
                 String password = passwordField.getText();
                 String email = emailField.getText();
 
-                Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-                IChatServer server = (IChatServer) registry.lookup("ChatService");
+                if (server == null) {
+                    server = ChatTransport.connect(); // O servidor pode ter subido depois da tela inicial
+                }
 
                 boolean success = server.registerUser(username, password, email);
 
@@ -277,6 +283,7 @@ public class ChatUI {
             // Obtém as listas do servidor
             List<String> allUsers = server.listUsers();
             List<String> onlineUsers = server.listOnlineUsers();
+            unreadCounts = server.getUnreadSummary(client.getSession()); // Uma chamada para todas as conversas
 
             allUsers.removeIf(user -> user.equals(username));
 
@@ -294,6 +301,7 @@ public class ChatUI {
 
             // Criar um único ListView para exibir todos os usuários
             ListView<String> usersView = new ListView<>(FXCollections.observableArrayList(allUsers));
+            this.usersView = usersView;
             usersView.setPrefHeight(350);
             usersView.setStyle("-fx-background-color: white; -fx-border-radius: 8px;");
             usersView.setMaxWidth(400);
@@ -319,6 +327,14 @@ public class ChatUI {
 
                         HBox cellLayout = new HBox(10, statusCircle, new Label(user));
 
+                        int unread = unreadCounts.getOrDefault(user, 0);
+                        if (unread > 0) {
+                            Label unreadBadge = new Label(String.valueOf(unread));
+                            unreadBadge.setStyle("-fx-background-color: #27ae60; -fx-text-fill: white; "
+                                    + "-fx-font-weight: bold; -fx-padding: 0 6px; -fx-background-radius: 10px;");
+                            cellLayout.getChildren().add(unreadBadge);
+                        }
+
                         if (isAdmin) {
                             Button deleteBtn = new Button("🗑️");
                             deleteBtn.setStyle(
@@ -508,7 +524,7 @@ public class ChatUI {
         chatMessages.setPadding(new Insets(10));
         chatMessages.setStyle("-fx-background-color:rgb(35, 56, 61); -fx-border-radius: 8px; -fx-padding: 10px;");
 
-        ScrollPane chatScroll = new ScrollPane(chatMessages);
+        chatScroll = new ScrollPane(chatMessages);
         chatScroll.setFitToWidth(true);
 
         chatScroll.setStyle(
@@ -516,18 +532,18 @@ public class ChatUI {
         chatScroll.setPrefHeight(300);
         chatScroll.setMaxWidth(720);
 
-        try {
-            List<MessageInfo> history = server.getMessageHistory(username, recipient);
-            for (MessageInfo msg : history) {
-                if (msg.isFile()) {
-                    addFileToChat(msg.getSender(), msg.getRecipient(), msg.getFile().getFileName());
-                } else {
-                    chatMessages.getChildren().add(new Label(msg.toString()));
-                }
+        loadOlderButton = new Button("⬆️ Carregar mensagens anteriores");
+        loadOlderButton.setOnAction(e -> loadOlderMessages(recipient));
+
+        // Ao rolar até o topo, busca a página anterior do histórico
+        ScrollPane scroll = chatScroll;
+        scroll.vvalueProperty().addListener((obs, oldValue, newValue) -> {
+            if (newValue.doubleValue() <= scroll.getVmin() && oldValue.doubleValue() > scroll.getVmin()) {
+                loadOlderMessages(recipient);
             }
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
+        });
+
+        loadLatestMessages(recipient); // Só a página mais recente; o resto vem sob demanda
 
         TextField messageField = new TextField();
         messageField.setPromptText("Digite sua mensagem...");
@@ -552,8 +568,14 @@ public class ChatUI {
             String message = messageField.getText();
             if (!message.isEmpty()) {
                 try {
-                    server.sendMessage(username, recipient, message);
-                    updateChat(recipient, false);
+                    SendResult result = client.send(recipient, message);
+                    if (!result.isSent()) {
+                        showError(result.describe()); // O texto fica no campo para tentar de novo
+                        return;
+                    }
+                    // Já na thread da tela: busca na hora, antes de qualquer notificação que
+                    // tenha chegado durante o envio (ela veria o cursor já adiante)
+                    appendNewMessages(recipient);
                     messageField.clear();
                 } catch (RemoteException ex) {
                     ex.printStackTrace();
@@ -577,6 +599,164 @@ public class ChatUI {
         primaryStage.show();
     }
 
+    // Carrega a página mais recente da conversa e rola para o fim
+    private void loadLatestMessages(String recipient) {
+        chatMessages.getChildren().clear();
+        readUpToId = 0;
+        try {
+            List<MessageInfo> page = server.getLatestMessages(client.getSession(), recipient, PAGE_SIZE);
+            hasOlderMessages = page.size() == PAGE_SIZE;
+            oldestLoadedId = page.isEmpty() ? Long.MAX_VALUE : page.get(0).getId();
+            newestLoadedId = page.isEmpty() ? 0 : page.get(page.size() - 1).getId();
+
+            if (hasOlderMessages) {
+                chatMessages.getChildren().add(loadOlderButton);
+            }
+            for (MessageInfo msg : page) {
+                chatMessages.getChildren().add(createMessageNode(msg));
+            }
+            markConversationRead(recipient);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+
+        ScrollPane scroll = chatScroll;
+        Platform.runLater(() -> scroll.setVvalue(scroll.getVmax()));
+    }
+
+    // O que está na tela já foi lido: avança o cursor de leitura no servidor
+    private void markConversationRead(String recipient) throws RemoteException {
+        unreadCounts.remove(recipient);
+        if (newestLoadedId > readUpToId) {
+            server.markConversationRead(client.getSession(), recipient, newestLoadedId);
+            readUpToId = newestLoadedId;
+        }
+    }
+
+    // Busca só o resumo de não lidas e redesenha a lista de usuários aberta
+    private void refreshUnreadCounts() throws RemoteException {
+        unreadCounts = server.getUnreadSummary(client.getSession());
+        if (usersView != null) {
+            usersView.refresh();
+        }
+    }
+
+    // Acrescenta ao fim só as mensagens que chegaram depois da última exibida
+    private void appendNewMessages(String recipient) {
+        try {
+            List<MessageInfo> page;
+            do {
+                page = server.getMessagesAfter(client.getSession(), recipient, newestLoadedId, PAGE_SIZE);
+                for (MessageInfo msg : page) {
+                    chatMessages.getChildren().add(createMessageNode(msg));
+                    newestLoadedId = msg.getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+            markConversationRead(recipient);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+
+        ScrollPane scroll = chatScroll;
+        Platform.runLater(() -> scroll.setVvalue(scroll.getVmax()));
+    }
+
+    // Abre o chat de grupo com a página mais recente do histórico
+    private void loadLatestGroupMessages(String groupName) throws RemoteException {
+        chatMessages.getChildren().clear();
+        List<MessageInfo> page = server.getGroupMessages(client.getSession(), groupName, Long.MAX_VALUE, PAGE_SIZE);
+        hasOlderMessages = page.size() == PAGE_SIZE;
+        oldestLoadedId = page.isEmpty() ? Long.MAX_VALUE : page.get(0).getId();
+        newestGroupMessageId = page.isEmpty() ? 0 : page.get(page.size() - 1).getId();
+
+        if (hasOlderMessages) {
+            chatMessages.getChildren().add(loadOlderButton);
+        }
+        for (MessageInfo msg : page) {
+            chatMessages.getChildren().add(createGroupMessageNode(msg));
+        }
+    }
+
+    // Busca as mensagens do grupo posteriores à última exibida e as acrescenta ao fim
+    private void appendNewGroupMessages(String groupName) throws RemoteException {
+        List<MessageInfo> page;
+        do {
+            page = server.getGroupMessagesAfter(client.getSession(), groupName, newestGroupMessageId, PAGE_SIZE);
+            for (MessageInfo msg : page) {
+                chatMessages.getChildren().add(createGroupMessageNode(msg));
+                newestGroupMessageId = msg.getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+    }
+
+    // O servidor manda os campos da mensagem; a formatação (hora, remetente) é feita aqui
+    private Node createGroupMessageNode(MessageInfo msg) {
+        if (msg.isFile()) {
+            return createFileNode(msg.getSender(), msg.getFile(), true);
+        }
+        Label messageLabel = new Label(msg.toString());
+        messageLabel.setStyle("-fx-text-fill: white; -fx-font-size: 14px;"); // Define a cor do texto como branco
+        return messageLabel;
+    }
+
+    // Insere a página anterior no topo mantendo a posição de leitura atual
+    private void loadOlderMessages(String recipient) {
+        if (!hasOlderMessages) {
+            return;
+        }
+        try {
+            List<MessageInfo> page = server.getMessagesBefore(client.getSession(), recipient, oldestLoadedId,
+                    PAGE_SIZE);
+            insertOlderPage(page, this::createMessageNode);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Idem para o chat de grupo aberto
+    private void loadOlderGroupMessages(String groupName) {
+        if (!hasOlderMessages) {
+            return;
+        }
+        try {
+            List<MessageInfo> page = server.getGroupMessages(client.getSession(), groupName, oldestLoadedId, PAGE_SIZE);
+            insertOlderPage(page, this::createGroupMessageNode);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void insertOlderPage(List<MessageInfo> page, Function<MessageInfo, Node> nodeFactory) {
+        hasOlderMessages = page.size() == PAGE_SIZE;
+        if (!page.isEmpty()) {
+            oldestLoadedId = page.get(0).getId();
+        }
+
+        double oldHeight = chatMessages.getHeight();
+        List<Node> nodes = new ArrayList<>();
+        for (MessageInfo msg : page) {
+            nodes.add(nodeFactory.apply(msg));
+        }
+        chatMessages.getChildren().addAll(1, nodes); // Logo abaixo do botão de carregar
+        if (!hasOlderMessages) {
+            chatMessages.getChildren().remove(loadOlderButton);
+        }
+
+        chatScroll.layout();
+        double newHeight = chatMessages.getHeight();
+        double viewport = chatScroll.getViewportBounds().getHeight();
+        if (newHeight > viewport) {
+            chatScroll.setVvalue((newHeight - oldHeight) / (newHeight - viewport));
+        }
+    }
+
+    private Node createMessageNode(MessageInfo msg) {
+        if (msg.isFile()) {
+            return createFileNode(msg.getSender(), msg.getFile(), false);
+        }
+        return new Label(msg.toString());
+    }
+
     // Método atualizado para adicionar mensagens formatadas
     private void addMessageToChat(String message, boolean isSentByUser) {
         Label messageLabel = new Label(message);
@@ -594,19 +774,6 @@ public class ChatUI {
         chatMessages.getChildren().add(messageLabel);
     }
 
-    // Exibe mensagens recebidas na janela apropriada
-    public void displayReceivedMessage(String sender, String message) {
-        TextArea chatArea = privateChatWindows.get(sender);
-
-        if (chatArea != null) {
-            // Atualiza o TextArea da janela de chat com o remetente
-            chatArea.appendText(sender + ": " + message + "\n");
-        } else {
-            // Opcional: Notificação ou log caso não haja janela aberta
-            System.out.println("Nova mensagem de " + sender + ": " + message);
-        }
-    }
-
     public void showGroupList() {
         currentWindow = "Group List";
 
@@ -714,7 +881,7 @@ public class ChatUI {
             String selectedGroup = groupListView.getSelectionModel().getSelectedItem();
             if (selectedGroup != null) {
                 try {
-                    if (server.requestJoinGroup(selectedGroup, username)) {
+                    if (server.requestJoinGroup(client.getSession(), selectedGroup)) {
                         Alert alert = new Alert(Alert.AlertType.INFORMATION, "Solicitação enviada.", ButtonType.OK);
                         alert.showAndWait();
                     } else {
@@ -804,7 +971,7 @@ public class ChatUI {
                 statusLabel.setTextFill(Color.YELLOW);
             } else {
                 try {
-                    boolean success = server.createGroup(groupName, groupDescription, username);
+                    boolean success = server.createGroup(client.getSession(), groupName, groupDescription);
                     if (success) {
                         statusLabel.setText("✅ Grupo criado com sucesso!");
                         statusLabel.setTextFill(Color.LIGHTGREEN);
@@ -852,6 +1019,10 @@ public class ChatUI {
         ScrollPane chatScroll = new ScrollPane(chatMessages); // ADICIONEI ISSO
         chatScroll.setFitToWidth(true); // ADICIONEI ISSO
         chatScroll.setMaxWidth(720);
+        this.chatScroll = chatScroll;
+
+        loadOlderButton = new Button("⬆️ Carregar mensagens anteriores");
+        loadOlderButton.setOnAction(e -> loadOlderGroupMessages(groupName));
 
         ListView<String> messageListView = new ListView<>();
         messageListView.setStyle("-fx-background-color: rgb(35, 56, 61); -fx-border-radius: 5px;");
@@ -862,6 +1033,7 @@ public class ChatUI {
         messageField.setMaxWidth(720);
 
         Button sendMessageButton = new Button("📨 Enviar");
+        Button sendFileButton = new Button("📎 Enviar Arquivo");
         Button leaveGroupButton = new Button("🚪 Sair do Grupo");
         Button manageRequestsButton = new Button("🔍 Gerenciar Solicitações");
         manageRequestsButton.setVisible(false);
@@ -875,6 +1047,7 @@ public class ChatUI {
                 "-fx-padding: 10px; -fx-border-radius: 8px;";
 
         sendMessageButton.setStyle(buttonStyle);
+        sendFileButton.setStyle(buttonStyle);
         leaveGroupButton.setStyle("-fx-background-color: #e74c3c; -fx-text-fill: white; " +
                 "-fx-font-size: 14px; -fx-font-weight: bold; -fx-min-width: 200px; " +
                 "-fx-padding: 10px; -fx-border-radius: 8px;");
@@ -885,14 +1058,7 @@ public class ChatUI {
                 "-fx-padding: 10px; -fx-border-radius: 8px;");
 
         try {
-            List<String> messages = server.getGroupMessages(groupName);
-            for (String message : messages) { // ADICIONEI ISSO
-                Label messageLabel = new Label(message);
-                messageLabel.setStyle("-fx-text-fill: white; -fx-font-size: 14px;"); // Define a cor do texto como
-                                                                                     // branco
-                chatMessages.getChildren().add(messageLabel);
-                // chatMessages.getChildren().add(new Label(message)); // ADICIONEI ISSO
-            }
+            loadLatestGroupMessages(groupName); // Só a página mais recente; o resto vem sob demanda
 
             // Verifica se o usuário é dono do grupo para mostrar botão de gerenciar
             GroupInfo group = server.getGroupInfo(groupName);
@@ -908,8 +1074,12 @@ public class ChatUI {
             String message = messageField.getText().trim();
             if (!message.isEmpty()) {
                 try {
-                    server.sendGroupMessage(groupName, username, message);
-                    updateChat(groupName, true);
+                    SendResult result = client.sendGroupMessage(groupName, message);
+                    if (!result.isSent()) {
+                        showError(result.describe());
+                        return;
+                    }
+                    appendNewGroupMessages(groupName); // Na hora, como no chat privado
                     messageField.clear();
                 } catch (RemoteException ex) {
                     ex.printStackTrace();
@@ -943,7 +1113,7 @@ public class ChatUI {
                         handleGroupOwnerExit(groupName);
                         success = true;
                     } else {
-                        success = server.leaveGroup(groupName, username);
+                        success = server.leaveGroup(client.getSession(), groupName);
                     }
                     if (success) {
                         showGroupList();
@@ -956,6 +1126,8 @@ public class ChatUI {
             }
         });
 
+        sendFileButton.setOnAction(e -> sendFileToGroup(groupName));
+
         manageRequestsButton.setOnAction(e -> showGroupRequests(groupName)); // Chama a tela de gerenciamento
 
         manageMembersButton.setOnAction(e -> showManageMembersScreen(groupName));
@@ -968,7 +1140,7 @@ public class ChatUI {
         buttonLayout2.setAlignment(Pos.CENTER); // Centraliza os botões no HBox
 
         // Adicione os botões ao HBox
-        buttonLayout1.getChildren().addAll(sendMessageButton, leaveGroupButton);
+        buttonLayout1.getChildren().addAll(sendMessageButton, sendFileButton, leaveGroupButton);
         buttonLayout2.getChildren().addAll(manageRequestsButton, manageMembersButton);
 
         groupChatLayout.getChildren().addAll(titleLabel, chatScroll, messageField, buttonLayout1, buttonLayout2,
@@ -1021,7 +1193,7 @@ public class ChatUI {
         try {
             GroupInfo group = server.getGroupInfo(groupName);
             if (group != null && group.getOwner().equals(username)) {
-                requestListView.getItems().addAll(server.getPendingRequests(groupName));
+                requestListView.getItems().addAll(server.getPendingRequests(client.getSession(), groupName));
             } else {
                 Alert alert = new Alert(Alert.AlertType.ERROR, "Você não é o dono deste grupo.", ButtonType.OK);
                 alert.showAndWait();
@@ -1042,7 +1214,7 @@ public class ChatUI {
             String selectedUser = requestListView.getSelectionModel().getSelectedItem();
             if (selectedUser != null) {
                 try {
-                    if (server.approveJoinRequest(groupName, username, selectedUser, true)) {
+                    if (server.approveJoinRequest(client.getSession(), groupName, selectedUser, true)) {
                         requestListView.getItems().remove(selectedUser);
                     }
                 } catch (RemoteException ex) {
@@ -1055,7 +1227,7 @@ public class ChatUI {
             String selectedUser = requestListView.getSelectionModel().getSelectedItem();
             if (selectedUser != null) {
                 try {
-                    if (server.approveJoinRequest(groupName, username, selectedUser, false)) {
+                    if (server.approveJoinRequest(client.getSession(), groupName, selectedUser, false)) {
                         requestListView.getItems().remove(selectedUser);
                     }
                 } catch (RemoteException ex) {
@@ -1126,7 +1298,7 @@ public class ChatUI {
             String selectedUser = memberListView.getSelectionModel().getSelectedItem();
             if (selectedUser != null) {
                 try {
-                    if (server.removeUserFromGroup(groupName, selectedUser)) {
+                    if (server.removeUserFromGroup(client.getSession(), groupName, selectedUser)) {
                         memberListView.getItems().remove(selectedUser);
                     }
                 } catch (RemoteException ex) {
@@ -1148,7 +1320,7 @@ public class ChatUI {
         GroupInfo group = null;
         try {
             group = server.getGroupInfo(groupName);
-            server.removeUserFromGroup(groupName, group.getOwner());
+            server.removeUserFromGroup(client.getSession(), groupName, group.getOwner());
             group = server.getGroupInfo(groupName);
         } catch (RemoteException ex) {
             ex.printStackTrace();
@@ -1165,7 +1337,7 @@ public class ChatUI {
             String newOwner = members.get(0);
             group.setOwner(newOwner);
             try {
-                if (server.changeGroupOwner(groupName, newOwner)) {
+                if (server.changeGroupOwner(client.getSession(), groupName, newOwner)) {
                     System.out.println("Novo dono do grupoooooo " + groupName + ": " + newOwner);
                 }
             } catch (RemoteException ex) {
@@ -1176,7 +1348,7 @@ public class ChatUI {
         } else {
             // Se não houver mais membros, excluímos o grupo
             try {
-                server.deleteGroup(groupName, username);
+                client.deleteGroup(groupName);
                 System.out.println("Grupo " + groupName + " foi removido por não ter mais membros.");
             } catch (RemoteException ex) {
                 ex.printStackTrace();
@@ -1190,122 +1362,109 @@ public class ChatUI {
         File selectedFile = fileChooser.showOpenDialog(primaryStage);
 
         if (selectedFile != null) {
-            try {
-                byte[] fileData = Files.readAllBytes(selectedFile.toPath());
-                String fileName = selectedFile.getName();
-
-                FileInfo fileInfo = new FileInfo(fileName, fileData);
-                server.sendFile(username, recipient, fileInfo);
-
-                addFileToChat(username, recipient, fileName);
-
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            // Envio em partes fora da thread da interface, para não travar a janela em arquivos grandes
+            Thread uploadThread = new Thread(() -> {
+                try {
+                    if (FileTransfer.upload(server, client.getSession(), recipient, selectedFile.toPath())) {
+                        updateChat(recipient, false); // O anexo aparece pelo delta, já com o id da mensagem
+                    } else {
+                        Platform.runLater(() -> new Alert(Alert.AlertType.ERROR,
+                                "Não foi possível enviar o arquivo.", ButtonType.OK).showAndWait());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "whatsut-upload");
+            uploadThread.setDaemon(true);
+            uploadThread.start();
         }
     }
 
-    public void receiveFileFromSender(String sender, String fileName) {
-        try {
-            FileInfo fileInfo = server.receiveFile(sender, username, fileName);
-
-            if (fileInfo != null) {
-                FileChooser fileChooser = new FileChooser();
-                fileChooser.setInitialFileName(fileInfo.getFileName());
+    public void sendFileToGroup(String groupName) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Todos os Arquivos", "*.*"));
+        File selectedFile = fileChooser.showOpenDialog(primaryStage);
 
-                File savedFile = fileChooser.showSaveDialog(primaryStage);
-                if (savedFile != null) {
-                    Files.write(savedFile.toPath(), fileInfo.getFileData());
-                    addMessageToChat("📥 Arquivo " + fileInfo.getFileName() + " baixado com sucesso!");
+        if (selectedFile != null) {
+            Thread uploadThread = new Thread(() -> {
+                try {
+                    if (FileTransfer.uploadToGroup(server, client.getSession(), groupName, selectedFile.toPath())) {
+                        updateChat(groupName, true);
+                    } else {
+                        Platform.runLater(() -> new Alert(Alert.AlertType.ERROR,
+                                "Não foi possível enviar o arquivo ao grupo.", ButtonType.OK).showAndWait());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-            } else {
-                addMessageToChat("❌ Nenhum arquivo disponível para baixar.");
-            }
-
-        } catch (IOException e) {
-            e.printStackTrace();
+            }, "whatsut-upload");
+            uploadThread.setDaemon(true);
+            uploadThread.start();
         }
     }
 
-    private void addMessageToChat(String message) {
-        Label messageLabel = new Label(message);
-        chatMessages.getChildren().add(messageLabel); // Agora adiciona corretamente
-    }
-
-    private void addFileToChat(String sender, String recipient, String fileName) {
+    // O FileInfo aqui é só o descritor; o conteúdo é baixado quando o botão é clicado
+    private HBox createFileNode(String sender, FileInfo attachment, boolean fromGroup) {
         HBox fileBox = new HBox(10);
         Label fileLabel = new Label();
+        String fileName = attachment.getFileName() + " (" + formatSize(attachment.getSize()) + ")";
         fileLabel.setText((sender.equals(username)) ? "Você enviou: " + fileName : sender + " ennviou: " + fileName);
 
         Button downloadButton = new Button("Baixar");
-        System.out.println("Addfile - sender: " + sender + " - recipient: " + recipient);
 
         downloadButton.setOnAction(e -> {
-            try {
-                FileInfo file = server.receiveFile(sender, recipient, fileName);
-                if (file != null) {
-                    FileChooser fileChooser = new FileChooser();
-                    fileChooser.setInitialFileName(file.getFileName());
-                    File saveFile = fileChooser.showSaveDialog(primaryStage);
-
-                    if (saveFile != null) {
-                        Files.write(saveFile.toPath(), file.getFileData());
-                        Alert alert = new Alert(Alert.AlertType.INFORMATION, "Arquivo salvo com sucesso!",
-                                ButtonType.OK);
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setInitialFileName(attachment.getFileName());
+            File saveFile = fileChooser.showSaveDialog(primaryStage);
+            if (saveFile == null) {
+                return;
+            }
+
+            // Baixa em partes direto para o disco, fora da thread da interface
+            Thread downloadThread = new Thread(() -> {
+                try {
+                    boolean saved = fromGroup
+                            ? FileTransfer.downloadFromGroup(server, client.getSession(), attachment, saveFile.toPath())
+                            : FileTransfer.download(server, client.getSession(), attachment, saveFile.toPath());
+                    Platform.runLater(() -> {
+                        Alert alert = saved
+                                ? new Alert(Alert.AlertType.INFORMATION, "Arquivo salvo com sucesso!", ButtonType.OK)
+                                : new Alert(Alert.AlertType.ERROR, "Arquivo não encontrado.", ButtonType.OK);
                         alert.showAndWait();
-                    }
-                } else {
-                    Alert alert = new Alert(Alert.AlertType.ERROR, "Arquivo não encontrado.", ButtonType.OK);
-                    alert.showAndWait();
+                    });
+                } catch (IOException ex) {
+                    ex.printStackTrace();
                 }
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
+            }, "whatsut-download");
+            downloadThread.setDaemon(true);
+            downloadThread.start();
         });
 
         fileBox.getChildren().addAll(fileLabel, downloadButton);
-        chatMessages.getChildren().add(fileBox);
+        return fileBox;
     }
 
-    private void saveFileLocally(FileInfo file) {
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setInitialFileName(file.getFileName());
-        File selectedFile = fileChooser.showSaveDialog(primaryStage);
-
-        if (selectedFile != null) {
-            try (FileOutputStream fos = new FileOutputStream(selectedFile)) {
-                fos.write(file.getFileData());
-                System.out.println("📂 Arquivo salvo: " + selectedFile.getAbsolutePath());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
         }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
     }
 
     public void updateChat(String recipientOrGroup, boolean isGroup) {
         Platform.runLater(() -> {
 
             try {
-                List<String> messages;
+                // Só busca o que chegou depois da última mensagem exibida
                 if (isGroup && currentWindow.equals("Group Chat") && recipientOrGroup.equals(currentGroup)) {
-                    chatMessages.getChildren().clear(); // Limpa o chat atual
-                    messages = server.getGroupMessages(recipientOrGroup);
-                    for (String message : messages) { // ADICIONEI ISSO
-                        Label messageLabel = new Label(message);
-                        messageLabel.setStyle("-fx-text-fill: white; -fx-font-size: 14px;"); // Define a cor do texto
-                                                                                             // como branco
-                        chatMessages.getChildren().add(messageLabel);
-                    }
+                    appendNewGroupMessages(recipientOrGroup);
                 } else if (currentWindow.equals("Private Chat") && recipientOrGroup.equals(currentRecipitent)) {
-                    chatMessages.getChildren().clear(); // Limpa o chat atual
-                    List<MessageInfo> history = server.getMessageHistory(username, recipientOrGroup);
-                    for (MessageInfo msg : history) {
-                        if (msg.isFile()) {
-                            addFileToChat(msg.getSender(), msg.getRecipient(), msg.getFile().getFileName());
-                        } else {
-                            chatMessages.getChildren().add(new Label(msg.toString()));
-                        }
-                    }
+                    appendNewMessages(recipientOrGroup);
+                } else if (!isGroup && currentWindow.equals("User List")) {
+                    refreshUnreadCounts(); // Atualiza os contadores sem refazer a tela
                 }
 
             } catch (RemoteException e) {
@@ -1314,6 +1473,36 @@ public class ChatUI {
         });
     }
 
+    // Mensagem empurrada pelo servidor. Se a conversa estiver aberta, entra direto no
+    // fim do chat sem consultar o servidor. Os ids vêm de uma sequência única para
+    // todas as conversas, então um salto no id não indica mensagem perdida; basta ser
+    // maior que o último exibido (um id menor ou igual já está na tela)
+    public void showIncomingMessage(MessageInfo msg, boolean isGroup) {
+        Platform.runLater(() -> {
+            try {
+                if (isGroup) {
+                    if (currentWindow.equals("Group Chat") && msg.getRecipient().equals(currentGroup)
+                            && msg.getId() > newestGroupMessageId) {
+                        chatMessages.getChildren().add(createGroupMessageNode(msg));
+                        newestGroupMessageId = msg.getId();
+                    }
+                } else if (currentWindow.equals("Private Chat") && msg.getSender().equals(currentRecipitent)) {
+                    if (msg.getId() > newestLoadedId) {
+                        chatMessages.getChildren().add(createMessageNode(msg));
+                        newestLoadedId = msg.getId();
+                        ScrollPane scroll = chatScroll;
+                        Platform.runLater(() -> scroll.setVvalue(scroll.getVmax()));
+                        markConversationRead(msg.getSender());
+                    }
+                } else if (currentWindow.equals("User List")) {
+                    refreshUnreadCounts(); // Só o resumo de não lidas
+                }
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
     public void showNotification(String msg, String content, String groupName) {
 
         Platform.runLater(() -> {
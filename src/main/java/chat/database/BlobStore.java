@@ -0,0 +1,159 @@
+package chat.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import chat.utils.HashUtil;
+
+// Armazenamento dos anexos no sistema de arquivos, endereçado pelo conteúdo:
+// cada arquivo fica em <raiz>/ab/cd/<sha256> e a linha da mensagem guarda só o hash.
+// O mesmo conteúdo enviado várias vezes (ou para vários destinatários) ocupa o
+// disco uma única vez. Os blobs são imutáveis, então leituras não precisam de lock.
+// Um blob é apagado quando a última linha que o referencia some (deleteIfUnreferenced);
+// quem está gravando uma linha nova prende o hash (pin) até a linha estar no banco,
+// para que a limpeza não apague um conteúdo que acabou de ser reaproveitado.
+public class BlobStore {
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path root;
+    private final Path tmp;
+    private final Map<String, Integer> pins = new ConcurrentHashMap<>(); // hash -> gravações em curso
+    private final Object[] locks = new Object[LOCK_STRIPES]; // Pin e limpeza do mesmo hash se excluem
+
+    public BlobStore(Path root) throws IOException {
+        this.root = root;
+        this.tmp = root.resolve("tmp");
+        Files.createDirectories(tmp);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Grava o conteúdo (se ainda não existir) e devolve o hash que o identifica
+    public String put(byte[] data) throws IOException {
+        String hash = HashUtil.sha256Hex(data);
+        put(data, hash);
+        return hash;
+    }
+
+    // Igual, com o hash já calculado por quem chamou (ex.: para prendê-lo antes)
+    public void put(byte[] data, String hash) throws IOException {
+        if (contains(hash)) {
+            return;
+        }
+        Path staged = Files.createTempFile(tmp, "blob", ".part");
+        Files.write(staged, data);
+        commit(staged, hash);
+    }
+
+    // Move para o store um arquivo cujo hash já foi conferido (ex.: upload em partes).
+    // Se o conteúdo já existe, o arquivo de origem é apenas apagado.
+    public void putFile(Path source, String hash) throws IOException {
+        if (contains(hash)) {
+            Files.deleteIfExists(source);
+            return;
+        }
+        commit(source, hash);
+    }
+
+    // Impede que a limpeza apague o blob; chame antes de put/putFile e solte com
+    // release depois que a linha que o referencia estiver gravada (ou falhar)
+    public void pin(String hash) {
+        synchronized (lock(hash)) {
+            pins.merge(hash, 1, Integer::sum);
+        }
+    }
+
+    public void release(String hash) {
+        synchronized (lock(hash)) {
+            pins.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    // Apaga o blob se ninguém o prendeu e referenced diz que nenhuma linha o usa.
+    // referenced roda com o lock do hash: um pin feito antes impede a remoção, e um
+    // feito depois encontra o arquivo ausente e o grava de novo
+    public boolean deleteIfUnreferenced(String hash, Predicate<String> referenced) throws IOException {
+        synchronized (lock(hash)) {
+            if (pins.containsKey(hash) || referenced.test(hash)) {
+                return false;
+            }
+            return Files.deleteIfExists(path(hash));
+        }
+    }
+
+    public boolean contains(String hash) {
+        return Files.exists(path(hash));
+    }
+
+    public long size(String hash) throws IOException {
+        return Files.size(path(hash));
+    }
+
+    public byte[] read(String hash) throws IOException {
+        return Files.readAllBytes(path(hash));
+    }
+
+    // Lê até length bytes a partir de offset direto do arquivo, sem carregar o resto.
+    // A parte vai para o cliente como byte[] dentro da resposta serializada, então
+    // transferTo (que só escreve num canal) não tem onde entrar, e mapear o arquivo
+    // para copiar no máximo uma parte (FileInfo.MAX_CHUNK_SIZE) custa mais que uma leitura
+    public byte[] read(String hash, long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(hash), StandardOpenOption.READ)) {
+            long available = Math.max(0, channel.size() - offset);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, available));
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+            }
+            return buffer.array();
+        }
+    }
+
+    // SHA-256 em hexadecimal minúsculo, o único nome de blob aceito
+    public static boolean isValidHash(String hash) {
+        return hash != null && hash.matches("[0-9a-f]{64}");
+    }
+
+    private Object lock(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), locks.length)];
+    }
+
+    public Path path(String hash) {
+        if (!isValidHash(hash)) {
+            throw new IllegalArgumentException("Hash de blob inválido: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    // Publica o arquivo com um move atômico: quem lê nunca vê um blob pela metade
+    private void commit(Path staged, String hash) throws IOException {
+        Path target = path(hash);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Origem em outro sistema de arquivos: copia para o tmp do store e move de lá
+            Path local = Files.createTempFile(tmp, "blob", ".part");
+            Files.copy(staged, local, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(staged);
+            commit(local, hash);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(staged); // Outra thread gravou o mesmo conteúdo antes
+        }
+    }
+}
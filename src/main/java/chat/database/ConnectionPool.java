@@ -0,0 +1,262 @@
+package chat.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import chat.utils.LatencyHistogram;
+import chat.utils.Metrics;
+
+// Pool de conexões SQLite de longa duração: uma única conexão de escrita
+// (o SQLite só aceita um escritor por vez) e várias conexões somente leitura.
+// As conexões emprestadas são proxies: chamar close() devolve a conexão ao
+// pool em vez de fechá-la, então o padrão try-with-resources continua valendo.
+// Os statements criados por elas (TimedStatement e TimedPreparedStatement) medem
+// cada execute* num histograma por SQL (tempo até a primeira linha, no caso de
+// consultas), e a espera por uma conexão também é medida.
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    private static final int MAX_TIMED_STATEMENTS = 256; // SQL distintos com histograma próprio
+    private static final int LABEL_CHARS = 60;
+    private static final Map<String, LatencyHistogram> STATEMENTS = new ConcurrentHashMap<>();
+    private static final LatencyHistogram READER_WAIT = Metrics.histogram("db.pool espera leitura");
+    private static final LatencyHistogram WRITER_WAIT = Metrics.histogram("db.pool espera escrita");
+    private static final LatencyHistogram OTHERS = Metrics.histogram("db (outros)");
+
+    private final String url;
+    private final long borrowTimeoutMillis;
+    private final BlockingQueue<Connection> writer = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<Connection> readers;
+    private final List<Connection> allConnections = new ArrayList<>();
+    private final List<String> writerPragmas;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, int readerCount, long borrowTimeoutMillis) throws SQLException {
+        this(url, readerCount, borrowTimeoutMillis, List.of());
+    }
+
+    // writerPragmas são reaplicados sempre que a conexão de escrita é (re)aberta,
+    // já que PRAGMAs como synchronous valem apenas para a conexão atual
+    public ConnectionPool(String url, int readerCount, long borrowTimeoutMillis, List<String> writerPragmas)
+            throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("O pool precisa de pelo menos uma conexão de leitura");
+        }
+        this.url = url;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.writerPragmas = List.copyOf(writerPragmas);
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+
+        writer.add(open(false));
+        for (int i = 0; i < readerCount; i++) {
+            readers.add(open(true));
+        }
+    }
+
+    // Conexão exclusiva para INSERT/UPDATE/DELETE e DDL
+    public Connection writer() throws SQLException {
+        return borrow(writer, false);
+    }
+
+    // Conexão para consultas; várias podem estar em uso ao mesmo tempo
+    public Connection reader() throws SQLException {
+        return borrow(readers, true);
+    }
+
+    public int getReaderCount() {
+        return readers.remainingCapacity() + readers.size();
+    }
+
+    public int getIdleReaders() {
+        return readers.size();
+    }
+
+    public void close() {
+        closed = true;
+        synchronized (allConnections) {
+            for (Connection conn : allConnections) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    System.out.println("Erro ao fechar conexão do pool: " + e.getMessage());
+                }
+            }
+            allConnections.clear();
+        }
+    }
+
+    private Connection borrow(BlockingQueue<Connection> queue, boolean readOnly) throws SQLException {
+        if (closed) {
+            throw new SQLException("Pool de conexões encerrado");
+        }
+
+        Connection conn;
+        long start = System.nanoTime();
+        try {
+            conn = queue.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando conexão", e);
+        } finally {
+            (readOnly ? READER_WAIT : WRITER_WAIT).recordSince(start);
+        }
+        if (conn == null) {
+            throw new SQLException("Tempo esgotado aguardando conexão " + (readOnly ? "de leitura" : "de escrita"));
+        }
+
+        // Health check: se a conexão morreu, substitui por uma nova
+        try {
+            if (conn.isClosed() || !conn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                discard(conn);
+                conn = open(readOnly);
+            }
+        } catch (SQLException e) {
+            discard(conn);
+            try {
+                conn = open(readOnly);
+            } catch (SQLException reopenError) {
+                queue.offer(conn); // Mantém a vaga no pool para a próxima tentativa
+                throw reopenError;
+            }
+        }
+
+        return wrap(conn, queue);
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + borrowTimeoutMillis);
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = 1");
+            } else {
+                for (String pragma : writerPragmas) {
+                    stmt.execute(pragma);
+                }
+            }
+        }
+        synchronized (allConnections) {
+            allConnections.add(conn);
+        }
+        return conn;
+    }
+
+    private void discard(Connection conn) {
+        synchronized (allConnections) {
+            allConnections.remove(conn);
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+            // A conexão já estava inutilizável
+        }
+    }
+
+    private void release(Connection conn, BlockingQueue<Connection> queue) {
+        if (closed) {
+            discard(conn);
+            return;
+        }
+        try {
+            // Desfaz qualquer transação deixada aberta por quem pegou a conexão
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Pode ter ficado com a transação aberta: não volta ao pool, vai uma nova no lugar
+            System.out.println("Conexão devolvida em estado inválido, será recriada: " + e.getMessage());
+            discard(conn);
+            try {
+                conn = open(queue == readers);
+            } catch (SQLException reopenError) {
+                // Devolve a fechada para manter a vaga; o health check de borrow reabre
+                System.out.println("Erro ao recriar conexão do pool: " + reopenError.getMessage());
+            }
+        }
+        queue.offer(conn);
+    }
+
+    private Connection wrap(Connection conn, BlockingQueue<Connection> queue) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!released) {
+                            released = true;
+                            release(conn, queue);
+                        }
+                        return null;
+                    case "isClosed":
+                        return released || conn.isClosed();
+                    case "unwrap":
+                        if (((Class<?>) args[0]).isInstance(proxy)) {
+                            return proxy;
+                        }
+                        break;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                if (released) {
+                    throw new SQLException("Conexão já devolvida ao pool");
+                }
+                try {
+                    Object result = method.invoke(conn, args);
+                    // prepareCall fica de fora: o delegate não é um CallableStatement
+                    if (method.getName().equals("prepareStatement")) {
+                        return new TimedPreparedStatement((PreparedStatement) result, (Connection) proxy,
+                                latencyOf((String) args[0]));
+                    }
+                    if (method.getName().equals("createStatement")) {
+                        return new TimedStatement((Statement) result, (Connection) proxy);
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+    }
+
+    // Histograma do SQL; além de MAX_TIMED_STATEMENTS textos distintos, todos vão para um só
+    static LatencyHistogram latencyOf(String sql) {
+        LatencyHistogram latency = STATEMENTS.get(sql);
+        if (latency != null) {
+            return latency;
+        }
+        return STATEMENTS.size() < MAX_TIMED_STATEMENTS
+                ? STATEMENTS.computeIfAbsent(sql, k -> Metrics.histogram("db " + label(k)))
+                : OTHERS;
+    }
+
+    // SQL numa linha; os longos são cortados e ganham um sufixo para não se misturarem
+    private static String label(String sql) {
+        String compact = sql.replaceAll("\\s+", " ").trim();
+        if (compact.length() <= LABEL_CHARS) {
+            return compact;
+        }
+        return compact.substring(0, LABEL_CHARS) + "… #" + Integer.toHexString(sql.hashCode());
+    }
+}
@@ -3,36 +3,343 @@ package chat.database;
 import chat.info.*;
 import chat.utils.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.sql.*;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:sqlite:chat.db"; // Nome do banco SQLite
+    private static final String DB_URL = Config.getString("whatsut.db.url", "jdbc:sqlite:chat.db"); // Nome do banco SQLite
+    private static final int POOL_READERS = Config.getInt("whatsut.db.pool.readers", 4);
+    private static final long POOL_TIMEOUT_MS = Config.getLong("whatsut.db.pool.timeoutMs", 5000);
+    private static final int WRITE_MAX_WAITING = Config.getInt("whatsut.db.write.maxWaiting", 256);
+
+    private static final String WAL_SYNCHRONOUS = Config.getString("whatsut.db.wal.synchronous", "NORMAL");
+    private static final int WAL_AUTOCHECKPOINT = Config.getInt("whatsut.db.wal.autocheckpoint", 1000);
+    private static final long WAL_CHECKPOINT_IDLE_MS = Config.getLong("whatsut.db.wal.checkpointIdleMs", 2000);
+    private static final boolean BATCH_ENABLED = Config.getBoolean("whatsut.db.batch.enabled", true);
+    private static final long BATCH_WINDOW_MS = Config.getLong("whatsut.db.batch.windowMs", 2);
+    private static final int BATCH_MAX_SIZE = Config.getInt("whatsut.db.batch.maxSize", 256);
+    private static final long WRITE_TIMEOUT_MS = Config.getLong("whatsut.db.write.timeoutMs", 30000);
+    private static final String BLOB_DIR = Config.getString("whatsut.blob.dir", "blobs");
+
+    // Consultas quentes: usadas pelos DAOs abaixo e conferidas com EXPLAIN QUERY PLAN na inicialização
+    // O histórico traz só o descritor do anexo; o conteúdo fica no BlobStore
+    private static final String MESSAGE_COLUMNS = "id, sender, recipient, message, timestamp, "
+            + "file_name, file_size, file_hash";
+    private static final String SQL_MESSAGE_HISTORY = "SELECT " + MESSAGE_COLUMNS + " "
+            + "FROM messages WHERE (sender = ? AND recipient = ?) OR (sender = ? AND recipient = ?) "
+            + "ORDER BY timestamp ASC";
+    // Páginas por cursor: cada direção da conversa é limitada separadamente (usando o índice
+    // (sender, recipient, id)) e só então as duas metades são unidas e cortadas no limite
+    private static final String SQL_MESSAGES_BEFORE = "SELECT * FROM ("
+            + "SELECT * FROM (SELECT " + MESSAGE_COLUMNS + " FROM messages "
+            + "WHERE sender = ? AND recipient = ? AND id < ? ORDER BY id DESC LIMIT ?) "
+            + "UNION ALL "
+            + "SELECT * FROM (SELECT " + MESSAGE_COLUMNS + " FROM messages "
+            + "WHERE sender = ? AND recipient = ? AND id < ? ORDER BY id DESC LIMIT ?)"
+            + ") ORDER BY id DESC LIMIT ?";
+    private static final String SQL_MESSAGES_AFTER = "SELECT * FROM ("
+            + "SELECT * FROM (SELECT " + MESSAGE_COLUMNS + " FROM messages "
+            + "WHERE sender = ? AND recipient = ? AND id > ? ORDER BY id ASC LIMIT ?) "
+            + "UNION ALL "
+            + "SELECT * FROM (SELECT " + MESSAGE_COLUMNS + " FROM messages "
+            + "WHERE sender = ? AND recipient = ? AND id > ? ORDER BY id ASC LIMIT ?)"
+            + ") ORDER BY id ASC LIMIT ?";
+    private static final String SQL_ATTACHMENT = "SELECT file_name, file_size, file_hash FROM messages "
+            + "WHERE id = ? AND (sender = ? OR recipient = ?) AND file_name IS NOT NULL";
+    private static final String SQL_MESSAGE_BY_CLIENT_ID = "SELECT id FROM messages "
+            + "WHERE sender = ? AND client_msg_id = ?";
+    // Anexos das linhas que deleteUser e deleteGroup apagam, e se um anexo ainda é usado
+    private static final String SQL_USER_ATTACHMENT_HASHES = "SELECT file_hash FROM messages "
+            + "WHERE (sender = ? OR recipient = ?) AND file_hash IS NOT NULL "
+            + "UNION SELECT file_hash FROM group_messages WHERE sender = ? AND file_hash IS NOT NULL";
+    private static final String SQL_GROUP_ATTACHMENT_HASHES = "SELECT DISTINCT file_hash FROM group_messages "
+            + "WHERE group_name = ? AND file_hash IS NOT NULL";
+    private static final String SQL_BLOB_REFERENCED = "SELECT 1 FROM messages WHERE file_hash = ? "
+            + "UNION ALL SELECT 1 FROM group_messages WHERE file_hash = ? LIMIT 1";
+    // Mensagens de grupo no mesmo formato das privadas (o grupo ocupa o lugar do destinatário)
+    private static final String GROUP_MESSAGE_COLUMNS = "id, sender, group_name AS recipient, message, timestamp, "
+            + "file_name, file_size, file_hash";
+    private static final String SQL_GROUP_MESSAGES_BEFORE = "SELECT * FROM ("
+            + "SELECT " + GROUP_MESSAGE_COLUMNS + " FROM group_messages "
+            + "WHERE group_name = ? AND id < ? ORDER BY id DESC LIMIT ?) ORDER BY id ASC";
+    private static final String SQL_GROUP_MESSAGES_AFTER = "SELECT " + GROUP_MESSAGE_COLUMNS + " "
+            + "FROM group_messages WHERE group_name = ? AND id > ? ORDER BY id ASC LIMIT ?";
+    private static final String SQL_GROUP_ATTACHMENT = "SELECT group_name, file_name, file_size, file_hash "
+            + "FROM group_messages WHERE id = ? AND file_name IS NOT NULL";
+    private static final String SQL_PENDING_MESSAGES = "SELECT " + MESSAGE_COLUMNS + " FROM messages "
+            + "WHERE id IN (SELECT message_id FROM pending_deliveries WHERE username = ? "
+            + "ORDER BY message_id LIMIT ?) ORDER BY id";
+    private static final String SQL_PENDING_IDS = "SELECT message_id FROM pending_deliveries "
+            + "WHERE username = ? ORDER BY message_id LIMIT ?";
+    // Não lidas de username agrupadas por remetente: tudo acima do cursor de leitura da conversa
+    private static final String SQL_UNREAD_COUNTS = "SELECT m.sender, COUNT(*) AS unread FROM messages m "
+            + "LEFT JOIN read_cursors r ON r.username = m.recipient AND r.peer = m.sender "
+            + "WHERE m.recipient = ? AND m.id > COALESCE(r.last_read_id, 0) GROUP BY m.sender";
+    private static final String SQL_UNREAD_FROM = "SELECT COUNT(*) FROM messages "
+            + "WHERE sender = ? AND recipient = ? AND id > "
+            + "COALESCE((SELECT last_read_id FROM read_cursors WHERE username = ? AND peer = ?), 0)";
+    private static final String SQL_GROUP_MEMBERS = "SELECT username FROM group_members WHERE group_name = ?";
+    private static final String SQL_DELETE_USER_MEMBERSHIPS = "DELETE FROM group_members WHERE username = ?";
+    private static final String SQL_USER_PASSWORD = "SELECT password FROM users WHERE username = ?";
+    private static final String SQL_REHASH_PASSWORD = "UPDATE users SET password = ? WHERE username = ? AND password = ?";
+
+    public static final int MAX_PAGE_SIZE = 200; // Limite de mensagens por página de histórico
+
+    private static final Map<String, String> HOT_QUERIES = Map.ofEntries(
+            Map.entry("getMessageHistory", SQL_MESSAGE_HISTORY),
+            Map.entry("getMessagesBefore", SQL_MESSAGES_BEFORE),
+            Map.entry("getMessagesAfter", SQL_MESSAGES_AFTER),
+            Map.entry("storeMessage.existing", SQL_MESSAGE_BY_CLIENT_ID),
+            Map.entry("sweepBlobs.referenced", SQL_BLOB_REFERENCED),
+            Map.entry("getAttachment", SQL_ATTACHMENT),
+            Map.entry("getPendingMessages", SQL_PENDING_MESSAGES),
+            Map.entry("getGroupMessages", SQL_GROUP_MESSAGES_BEFORE),
+            Map.entry("getGroupMessagesAfter", SQL_GROUP_MESSAGES_AFTER),
+            Map.entry("getGroupAttachment", SQL_GROUP_ATTACHMENT),
+            Map.entry("getUnreadCounts", SQL_UNREAD_COUNTS),
+            Map.entry("countUnreadFrom", SQL_UNREAD_FROM),
+            Map.entry("getGroupInfo.members", SQL_GROUP_MEMBERS),
+            Map.entry("deleteUser.memberships", SQL_DELETE_USER_MEMBERSHIPS),
+            Map.entry("login", SQL_USER_PASSWORD));
+
+    // ROLLBACK: journal padrão do SQLite, escritas feitas na thread que chamou.
+    // WAL: journal em modo WAL e todas as escritas passam por uma thread única (DatabaseWriter).
+    public enum StorageMode {
+        ROLLBACK, WAL;
+
+        // Lido de whatsut.db.mode; valor inválido cai no padrão em vez de impedir a subida
+        public static StorageMode fromConfig() {
+            String value = Config.getString("whatsut.db.mode", "rollback");
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.out.println("⚠️ Valor inválido para whatsut.db.mode: " + value + " (usando rollback)");
+                return ROLLBACK;
+            }
+        }
+    }
+
+    // Não lidas por remetente e o maior id de mensagem existente quando a contagem foi
+    // feita: mensagens com id maior que upToId ainda não estavam na contagem
+    public static final class UnreadSnapshot {
+        private final Map<String, Integer> counts;
+        private final long upToId;
+
+        UnreadSnapshot(Map<String, Integer> counts, long upToId) {
+            this.counts = counts;
+            this.upToId = upToId;
+        }
+
+        public Map<String, Integer> getCounts() {
+            return counts;
+        }
+
+        public long getUpToId() {
+            return upToId;
+        }
+    }
+
+    private final StorageMode mode;
+    private final ConnectionPool pool;
+    private final DatabaseWriter writer; // null no modo ROLLBACK
+    private final MessageBatcher messageBatcher; // null se o group commit estiver desligado
+    private final BlobStore blobs; // Conteúdo dos anexos, endereçado pelo SHA-256
+    private final GroupCache groupCache = new GroupCache(); // Atualizado dentro das escritas de grupo
+    // Vagas para escritas em andamento ou na fila do escritor único. Com threads
+    // virtuais nada limita quantas chamadas se acumulam atrás dele; sem vaga em
+    // POOL_TIMEOUT_MS a escrita falha em vez de alongar a fila
+    private final Semaphore writePermits = new Semaphore(Math.max(1, WRITE_MAX_WAITING), true);
+    private final AtomicLong rejectedWrites = new AtomicLong();
+    private final PasswordHasher passwords = PasswordHasher.fromConfig();
 
     public DatabaseManager() {
+        this(StorageMode.fromConfig());
+    }
+
+    public DatabaseManager(StorageMode mode) {
+        this.mode = mode;
+        try {
+            if (mode == StorageMode.WAL) {
+                pool = new ConnectionPool(DB_URL, POOL_READERS, POOL_TIMEOUT_MS, List.of(
+                        "PRAGMA journal_mode = WAL",
+                        "PRAGMA synchronous = " + WAL_SYNCHRONOUS,
+                        "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT));
+                writer = new DatabaseWriter(pool, WAL_CHECKPOINT_IDLE_MS, WRITE_TIMEOUT_MS);
+            } else {
+                pool = new ConnectionPool(DB_URL, POOL_READERS, POOL_TIMEOUT_MS);
+                writer = null;
+            }
+            blobs = new BlobStore(Paths.get(BLOB_DIR));
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Erro ao abrir o banco de dados", e);
+        }
+        System.out.println("✅ Banco de dados aberto em modo " + mode);
         createTables(); // Cria as tabelas ao iniciar o banco
         updateSchema(); // Atualiza o esquema se necessário
+        createIndexes(); // Aplica as versões de índices que faltam
+        verifyQueryPlans(); // Avisa se alguma consulta quente ficou sem índice
         createDefaultAdmin(); // Garante que o admin existe
+
+        messageBatcher = BATCH_ENABLED ? new MessageBatcher(this::insertMessages, BATCH_WINDOW_MS, BATCH_MAX_SIZE)
+                : null;
     }
 
     private void updateSchema() {
-        String sql = "ALTER TABLE users ADD COLUMN is_admin BOOLEAN DEFAULT 0";
-        try (Connection conn = connect();
+        addColumn("users", "is_admin BOOLEAN DEFAULT 0");
+        addColumn("messages", "file_size INTEGER");
+        addColumn("messages", "file_hash TEXT");
+        addColumn("messages", "client_msg_id INTEGER");
+        migrateInlineAttachments();
+        migrateGroupMessages();
+    }
+
+    // Mensagens de grupo: id próprio, anexo descrito como nas privadas
+    private static String groupMessagesTable(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "group_name TEXT NOT NULL, "
+                + "sender TEXT NOT NULL, "
+                + "message TEXT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "file_name TEXT, "
+                + "file_size INTEGER, "
+                + "file_hash TEXT, "
+                + "FOREIGN KEY (group_name) REFERENCES groups(name), "
+                + "FOREIGN KEY (sender) REFERENCES users(username));";
+    }
+
+    // Bancos antigos têm group_messages sem coluna id: recria a tabela no formato novo
+    // mantendo o rowid de cada linha como id, para que os cursores já entregues continuem valendo
+    private void migrateGroupMessages() {
+        try (Connection conn = connectWriter();
+                Statement stmt = conn.createStatement()) {
+            boolean hasId = false;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(group_messages)")) {
+                while (rs.next()) {
+                    hasId |= rs.getString("name").equals("id");
+                }
+            }
+            if (hasId) {
+                return;
+            }
+
+            conn.setAutoCommit(false);
+            try {
+                stmt.execute(groupMessagesTable("group_messages_new"));
+                int migrated = stmt.executeUpdate("INSERT INTO group_messages_new "
+                        + "(id, group_name, sender, message, timestamp) "
+                        + "SELECT rowid, group_name, sender, message, timestamp FROM group_messages");
+                stmt.execute("DROP TABLE group_messages");
+                stmt.execute("ALTER TABLE group_messages_new RENAME TO group_messages");
+                conn.commit();
+                System.out.println("✅ " + migrated + " mensagens de grupo migradas para a tabela com id");
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Erro ao migrar mensagens de grupo: " + e.getMessage());
+        }
+    }
+
+    private void addColumn(String table, String column) {
+        String sql = "ALTER TABLE " + table + " ADD COLUMN " + column;
+        try (Connection conn = connectWriter();
                 Statement stmt = conn.createStatement()) {
             stmt.execute(sql);
-            System.out.println("✅ Coluna 'is_admin' adicionada com sucesso.");
+            System.out.println("✅ Coluna '" + column.split(" ")[0] + "' adicionada com sucesso.");
         } catch (SQLException e) {
             // Se a coluna já existir, vai dar erro, então apenas ignoramos
             if (!e.getMessage().contains("duplicate column name")) {
-                // System.out.println("Nota: Coluna 'is_admin' já deve existir ou erro: " +
-                // e.getMessage());
+                System.out.println("Erro ao adicionar coluna em " + table + ": " + e.getMessage());
             }
         }
     }
 
+    // Anexos gravados dentro da tabela (antes do BlobStore) ou sem descritor: move o
+    // conteúdo para o store, uma linha por vez, e deixa na linha só o nome, tamanho e hash
+    private void migrateInlineAttachments() {
+        String select = "SELECT id FROM messages WHERE file_data IS NOT NULL "
+                + "OR (file_name IS NOT NULL AND file_hash IS NULL)";
+        String load = "SELECT file_data FROM messages WHERE id = ?";
+        String update = "UPDATE messages SET file_data = NULL, file_size = ?, file_hash = ? WHERE id = ?";
+        int migrated = 0;
+
+        try (Connection conn = connectWriter();
+                PreparedStatement query = conn.prepareStatement(select);
+                PreparedStatement loadStmt = conn.prepareStatement(load);
+                PreparedStatement pstmt = conn.prepareStatement(update)) {
+            List<Long> ids = new ArrayList<>();
+            ResultSet rs = query.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getLong("id"));
+            }
+
+            for (long id : ids) {
+                loadStmt.setLong(1, id);
+                ResultSet data = loadStmt.executeQuery();
+                byte[] content = data.next() ? data.getBytes("file_data") : null;
+                if (content == null) {
+                    content = new byte[0];
+                }
+                pstmt.setLong(1, content.length);
+                pstmt.setString(2, blobs.put(content));
+                pstmt.setLong(3, id);
+                pstmt.executeUpdate();
+                migrated++;
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Erro ao mover anexos para o armazenamento de arquivos: " + e.getMessage());
+        }
+        if (migrated > 0) {
+            System.out.println("✅ " + migrated + " anexos movidos para " + BLOB_DIR
+                    + " (rode VACUUM no banco para liberar o espaço)");
+        }
+    }
+
+    private void createIndexes() {
+        try (Connection conn = connectWriter()) {
+            SchemaIndexes.apply(conn);
+        } catch (SQLException e) {
+            System.out.println("Erro ao criar índices: " + e.getMessage());
+        }
+    }
+
+    // Confere o plano de execução das consultas quentes; retorna as que varrem tabelas inteiras
+    public List<String> verifyQueryPlans() {
+        try (Connection conn = connectReader()) {
+            List<String> fullScans = SchemaIndexes.findFullScans(conn, HOT_QUERIES);
+            for (String problem : fullScans) {
+                System.out.println("⚠️ Consulta sem índice: " + problem);
+            }
+            return fullScans;
+        } catch (SQLException e) {
+            System.out.println("Erro ao verificar planos de consulta: " + e.getMessage());
+            return List.of();
+        }
+    }
+
     private void createDefaultAdmin() {
         if (!userExists("admin")) {
             registerUser("admin", "admin", "admin@whatsut.com");
@@ -44,7 +351,7 @@ public class DatabaseManager {
 
     private boolean userExists(String username) {
         String sql = "SELECT 1 FROM users WHERE username = ?";
-        try (Connection conn = connect();
+        try (Connection conn = connectReader();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, username);
             return pstmt.executeQuery().next();
@@ -55,10 +362,13 @@ public class DatabaseManager {
 
     private void makeAdmin(String username) {
         String sql = "UPDATE users SET is_admin = 1 WHERE username = ?";
-        try (Connection conn = connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            pstmt.executeUpdate();
+        try {
+            write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, username);
+                    return pstmt.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -66,7 +376,7 @@ public class DatabaseManager {
 
     public boolean isAdmin(String username) {
         String sql = "SELECT is_admin FROM users WHERE username = ?";
-        try (Connection conn = connect();
+        try (Connection conn = connectReader();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
@@ -79,14 +389,94 @@ public class DatabaseManager {
         return false;
     }
 
-    // Conectar ao banco de dados SQLite
-    private Connection connect() throws SQLException {
-        return DriverManager.getConnection(DB_URL);
+    // Empresta a conexão de escrita do pool (devolvida no close())
+    private Connection connectWriter() throws SQLException {
+        return pool.writer();
+    }
+
+    // Empresta uma conexão de leitura do pool (devolvida no close())
+    private Connection connectReader() throws SQLException {
+        return pool.reader();
+    }
+
+    // Executa uma escrita, depois de conseguir uma vaga em writePermits
+    private <T> T write(SqlWork<T> work) throws SQLException {
+        acquireWritePermit();
+        try {
+            return execute(work);
+        } finally {
+            writePermits.release();
+        }
+    }
+
+    private void acquireWritePermit() throws SQLException {
+        try {
+            if (!writePermits.tryAcquire(POOL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                rejectedWrites.incrementAndGet();
+                throw new SQLException("Escritor ocupado: " + WRITE_MAX_WAITING + " escritas já aguardando");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando vaga para escrita", e);
+        }
+    }
+
+    // No modo WAL vai para a fila da thread de escrita, no ROLLBACK roda aqui mesmo
+    // com a conexão de escrita do pool
+    private <T> T execute(SqlWork<T> work) throws SQLException {
+        if (writer != null) {
+            return writer.execute(work);
+        }
+        try (Connection conn = connectWriter()) {
+            return work.execute(conn);
+        }
+    }
+
+    // Várias leituras numa mesma transação: todas enxergam o mesmo estado do banco
+    private <T> T readConsistent(SqlWork<T> work) throws SQLException {
+        try (Connection conn = connectReader()) {
+            conn.setAutoCommit(false);
+            try {
+                return work.execute(conn);
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    public StorageMode getStorageMode() {
+        return mode;
+    }
+
+    // Escritas recusadas por falta de vaga em writePermits
+    public long getRejectedWrites() {
+        return rejectedWrites.get();
+    }
+
+    public int getWritesInFlight() {
+        return Math.max(1, WRITE_MAX_WAITING) - writePermits.availablePermits();
+    }
+
+    public int getWriteQueueDepth() {
+        int depth = writer != null ? writer.getQueueDepth() : 0;
+        return messageBatcher != null ? depth + messageBatcher.getQueueDepth() : depth;
+    }
+
+    public void close() {
+        if (messageBatcher != null) {
+            messageBatcher.shutdown(); // Grava os lotes pendentes antes de parar o escritor
+        }
+        if (writer != null) {
+            writer.shutdown();
+        }
+        pool.close();
+        passwords.shutdown();
     }
 
     // Criar tabelas no banco
     private void createTables() {
-        try (Connection conn = connect();
+        try (Connection conn = connectWriter();
                 Statement stmt = conn.createStatement()) {
 
             // Criar tabela de usuários
@@ -105,6 +495,9 @@ public class DatabaseManager {
                     + "timestamp INTEGER NOT NULL, "
                     + "file_name TEXT, "
                     + "file_data BLOB, "
+                    + "file_size INTEGER, "
+                    + "file_hash TEXT, "
+                    + "client_msg_id INTEGER, "
                     + "FOREIGN KEY (sender) REFERENCES users(username), "
                     + "FOREIGN KEY (recipient) REFERENCES users(username));";
 
@@ -123,10 +516,35 @@ public class DatabaseManager {
                     + "FOREIGN KEY (username) REFERENCES users(username), "
                     + "PRIMARY KEY (group_name, username));";
 
+            // Mensagens privadas que chegaram com o destinatário offline, ainda não entregues
+            String createPendingDeliveriesTable = "CREATE TABLE IF NOT EXISTS pending_deliveries ("
+                    + "username TEXT NOT NULL, "
+                    + "message_id INTEGER NOT NULL, "
+                    + "PRIMARY KEY (username, message_id)) WITHOUT ROWID;";
+
+            // Pedidos de entrada em grupos aguardando o dono
+            String createPendingRequestsTable = "CREATE TABLE IF NOT EXISTS pending_requests ("
+                    + "group_name TEXT NOT NULL, "
+                    + "username TEXT NOT NULL, "
+                    + "FOREIGN KEY (group_name) REFERENCES groups(name), "
+                    + "FOREIGN KEY (username) REFERENCES users(username), "
+                    + "PRIMARY KEY (group_name, username));";
+
+            // Até onde cada usuário leu cada conversa privada (id da última mensagem lida de peer)
+            String createReadCursorsTable = "CREATE TABLE IF NOT EXISTS read_cursors ("
+                    + "username TEXT NOT NULL, "
+                    + "peer TEXT NOT NULL, "
+                    + "last_read_id INTEGER NOT NULL, "
+                    + "PRIMARY KEY (username, peer)) WITHOUT ROWID;";
+
             stmt.execute(createUsersTable);
             stmt.execute(createMessagesTable);
             stmt.execute(createGroupsTable);
             stmt.execute(createGroupMembersTable);
+            stmt.execute(groupMessagesTable("group_messages"));
+            stmt.execute(createPendingRequestsTable);
+            stmt.execute(createPendingDeliveriesTable);
+            stmt.execute(createReadCursorsTable);
 
             System.out.println("✅ Tabelas do banco de dados criadas com sucesso!");
 
@@ -138,15 +556,21 @@ public class DatabaseManager {
     public boolean registerUser(String username, String password, String email) {
         String sql = "INSERT INTO users (username, password, email) VALUES (?, ?, ?)";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, username);
-            pstmt.setString(2, HashUtil.generateHash(password));
-            pstmt.setString(3, email);
-            pstmt.executeUpdate();
-            return true;
-
+        // O hash é calculado antes da escrita, para não ocupar o escritor único
+        String hash = passwords.hash(password);
+        if (hash == null) {
+            return false;
+        }
+        try {
+            return write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, username);
+                    pstmt.setString(2, hash);
+                    pstmt.setString(3, email);
+                    pstmt.executeUpdate();
+                    return true;
+                }
+            });
         } catch (SQLException e) {
             System.out.println("Erro ao registrar usuário: " + e.getMessage());
             return false;
@@ -154,29 +578,58 @@ public class DatabaseManager {
     }
 
     public boolean login(String username, String password) {
-        String sql = "SELECT password FROM users WHERE username = ?";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        String storedHash = null;
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_USER_PASSWORD)) {
 
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                String storedHash = rs.getString("password");
-                return storedHash.equals(HashUtil.generateHash(password));
+                storedHash = rs.getString("password");
             }
         } catch (SQLException e) {
             System.out.println("Erro ao fazer login: " + e.getMessage());
         }
-        return false;
+        // A conferência (que pode ser lenta com KDF) acontece com a conexão já devolvida
+        if (storedHash == null || !passwords.verify(password, storedHash)) {
+            return false;
+        }
+        if (passwords.needsRehash(storedHash)) {
+            rehash(username, password, storedHash);
+        }
+        return true;
+    }
+
+    // Regrava a senha no formato configurado; se falhar, o hash antigo continua valendo
+    private void rehash(String username, String password, String oldHash) {
+        String hash = passwords.hash(password);
+        if (hash == null) {
+            return;
+        }
+        try {
+            write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(SQL_REHASH_PASSWORD)) {
+                    pstmt.setString(1, hash);
+                    pstmt.setString(2, username);
+                    pstmt.setString(3, oldHash);
+                    return pstmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            System.out.println("Erro ao atualizar hash da senha: " + e.getMessage());
+        }
+    }
+
+    public PasswordHasher getPasswordHasher() {
+        return passwords;
     }
 
     public List<String> listUsers() {
         List<String> users = new ArrayList<>();
         String sql = "SELECT username FROM users";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = connectReader();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -200,41 +653,189 @@ public class DatabaseManager {
         storeMessage(msg);
     }
 
-    public void storeMessage(MessageInfo msg) {
-        String sql = "INSERT INTO messages (sender, recipient, message, timestamp, file_name, file_data) "
-                + "VALUES (?, ?, ?, ?, ?, ?)";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    // Grava como mensagem um arquivo recebido em partes (já conferido pelo UploadStore).
+    // O arquivo é movido para o BlobStore sem passar pela memória.
+    public MessageInfo storeFile(String sender, String recipient, String fileName, Path content, String hash,
+            long timestamp) {
+        blobs.pin(hash); // storeMessage prende de novo até a linha estar gravada
+        try {
+            long size = Files.size(content);
+            blobs.putFile(content, hash);
+            return storeMessage(new MessageInfo(sender, recipient, new FileInfo(0, fileName, size, hash), timestamp));
+        } catch (IOException e) {
+            System.out.println("Erro ao gravar arquivo recebido: " + e.getMessage());
+            return null;
+        } finally {
+            blobs.release(hash);
+        }
+    }
 
-            pstmt.setString(1, msg.getSender());
-            pstmt.setString(2, msg.getRecipient());
-            pstmt.setString(3, msg.getMessage());
-            pstmt.setLong(4, msg.getTimestamp());
+    // Retorna só depois que a mensagem está gravada: com o group commit ligado,
+    // ela vai junto com as outras que chegaram na mesma janela. Devolve a mensagem
+    // gravada (com o id preenchido), ou null se a gravação falhou ou passou do tempo.
+    public MessageInfo storeMessage(MessageInfo msg) {
+        try {
+            return storeMessage(msg, null);
+        } catch (SQLTimeoutException e) {
+            System.out.println("Erro ao armazenar mensagem: " + e.getMessage());
+            return null;
+        }
+    }
 
-            if (msg.isFile() && msg.getFile() != null) {
-                pstmt.setString(5, msg.getFile().getFileName());
-                pstmt.setBytes(6, msg.getFile().getFileData());
-            } else {
-                pstmt.setNull(5, Types.VARCHAR); // Se não for um arquivo, define o file_name como null
-                pstmt.setNull(6, Types.BLOB); // Se não for um arquivo, define file_data como null
+    // Igual, mas idempotente por (remetente, clientMessageId): se o mesmo envio já estava
+    // gravado, devolve a gravação anterior sem inserir de novo. onStored (se houver) só é
+    // chamado quando esta chamada inseriu a mensagem. Se a espera esgotar, lança
+    // SQLTimeoutException: a mensagem continua na fila e, se for gravada depois, onStored
+    // é chamado nesse momento, fora da thread de quem chamou.
+    public MessageInfo storeMessage(MessageInfo msg, Consumer<MessageInfo> onStored) throws SQLTimeoutException {
+        String pinned = null; // Blob do anexo, que a limpeza não pode apagar antes de a linha ser gravada
+        CompletableFuture<Boolean> inserted = null;
+        try {
+            FileInfo file = msg.isFile() ? msg.getFile() : null;
+            if (file != null && file.hasData()) {
+                // O conteúdo do anexo vai para o BlobStore aqui, na thread de quem enviou;
+                // para o banco (e para o lote) segue só o descritor
+                pinned = HashUtil.sha256Hex(file.getFileData());
+                blobs.pin(pinned);
+                blobs.put(file.getFileData(), pinned);
+                MessageInfo descriptor = new MessageInfo(msg.getSender(), msg.getRecipient(),
+                        new FileInfo(0, file.getFileName(), file.getSize(), pinned), msg.getTimestamp());
+                descriptor.setClientMessageId(msg.getClientMessageId());
+                msg = descriptor;
+            } else if (file != null && BlobStore.isValidHash(file.getHash())) {
+                pinned = file.getHash();
+                blobs.pin(pinned);
+            }
+            if (msg.getClientMessageId() == 0) {
+                // Envio sem id do cliente: um id aleatório ainda protege a regravação do lote
+                msg.setClientMessageId(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE));
+            }
+            MessageInfo stored = msg;
+            acquireWritePermit();
+            try {
+                if (messageBatcher != null) {
+                    inserted = messageBatcher.enqueue(msg);
+                } else if (writer != null) {
+                    inserted = writer.submit(conn -> insertMessages(conn, List.of(stored))[0]);
+                } else {
+                    inserted = CompletableFuture.completedFuture(insertMessages(List.of(msg))[0]);
+                }
+                try {
+                    if (DatabaseWriter.await(inserted, WRITE_TIMEOUT_MS) && onStored != null) {
+                        onStored.accept(stored);
+                    }
+                } catch (SQLTimeoutException e) {
+                    if (onStored != null) {
+                        // Pool comum: a thread do lote ou de escrita não pode esperar por outra escrita
+                        inserted.thenAcceptAsync(isNew -> {
+                            if (isNew) {
+                                onStored.accept(stored);
+                            }
+                        });
+                    }
+                    throw e;
+                }
+            } finally {
+                writePermits.release();
+            }
+            return stored;
+        } catch (SQLTimeoutException e) {
+            throw e;
+        } catch (SQLException | IOException e) {
+            System.out.println("Erro ao armazenar mensagem: " + e.getMessage());
+            return null;
+        } finally {
+            if (pinned != null) {
+                releaseWhenWritten(pinned, inserted);
             }
+        }
+    }
 
-            pstmt.executeUpdate();
+    // Solta o blob quando a gravação da linha que o referencia terminar (mesmo depois de um timeout)
+    private void releaseWhenWritten(String hash, CompletableFuture<?> written) {
+        if (written == null) {
+            blobs.release(hash);
+        } else {
+            written.whenComplete((result, error) -> blobs.release(hash));
+        }
+    }
+
+    // Grava todas as mensagens numa única transação (um único commit/fsync) e
+    // preenche o id de cada uma. Sem limite de espera pela thread de escrita: quem
+    // limita a espera é storeMessage, e o lote não pode ser dado como falho enquanto
+    // ainda pode ser gravado
+    private boolean[] insertMessages(List<MessageInfo> batch) throws SQLException {
+        if (writer != null) {
+            return DatabaseWriter.await(writer.submit(conn -> insertMessages(conn, batch)), 0);
+        }
+        try (Connection conn = connectWriter()) {
+            return insertMessages(conn, batch);
+        }
+    }
+
+    // Um envio repetido (mesmo remetente e clientMessageId) não gera outra linha: recebe o
+    // id da linha existente e fica como não inserido no resultado
+    private boolean[] insertMessages(Connection conn, List<MessageInfo> batch) throws SQLException {
+        String sql = "INSERT INTO messages (sender, recipient, message, timestamp, file_name, "
+                + "file_size, file_hash, client_msg_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT (sender, client_msg_id) DO NOTHING";
+        boolean[] inserted = new boolean[batch.size()];
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                PreparedStatement existing = conn.prepareStatement(SQL_MESSAGE_BY_CLIENT_ID)) {
+            for (int i = 0; i < batch.size(); i++) {
+                MessageInfo msg = batch.get(i);
+                pstmt.setString(1, msg.getSender());
+                pstmt.setString(2, msg.getRecipient());
+                pstmt.setString(3, msg.getMessage());
+                pstmt.setLong(4, msg.getTimestamp());
+
+                if (msg.isFile() && msg.getFile() != null) {
+                    pstmt.setString(5, msg.getFile().getFileName());
+                    pstmt.setLong(6, msg.getFile().getSize());
+                    pstmt.setString(7, msg.getFile().getHash());
+                } else {
+                    pstmt.setNull(5, Types.VARCHAR); // Se não for um arquivo, define o file_name como null
+                    pstmt.setNull(6, Types.INTEGER);
+                    pstmt.setNull(7, Types.VARCHAR);
+                }
+                pstmt.setLong(8, msg.getClientMessageId());
+                // Uma execução por linha para obter o id; o custo do lote está no commit
+                inserted[i] = pstmt.executeUpdate() > 0;
+                long id = 0;
+                if (inserted[i]) {
+                    try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                        id = keys.next() ? keys.getLong(1) : 0;
+                    }
+                } else {
+                    existing.setString(1, msg.getSender());
+                    existing.setLong(2, msg.getClientMessageId());
+                    try (ResultSet rs = existing.executeQuery()) {
+                        id = rs.next() ? rs.getLong(1) : 0;
+                    }
+                }
+                msg.setId(id);
+                if (msg.isFile() && msg.getFile() != null) {
+                    msg.getFile().setMessageId(id); // O descritor aponta para a própria mensagem
+                }
+            }
+            conn.commit();
         } catch (SQLException e) {
-            System.out.println("Erro ao armazenar mensagem: " + e.getMessage());
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
+        return inserted;
     }
 
     public List<MessageInfo> getMessageHistory(String user1, String user2) throws RemoteException {
-        String sql = "SELECT sender, recipient, message, timestamp, file_name, file_data "
-                + "FROM messages WHERE (sender = ? AND recipient = ?) OR (sender = ? AND recipient = ?) "
-                + "ORDER BY timestamp ASC";
-
-        List<MessageInfo> messages = new ArrayList<>();
+        List<MessageInfo> messages = new MessageList();
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_MESSAGE_HISTORY)) {
 
             pstmt.setString(1, user1);
             pstmt.setString(2, user2);
@@ -244,19 +845,7 @@ public class DatabaseManager {
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                String sender = rs.getString("sender");
-                String recipient = rs.getString("recipient");
-                String message = rs.getString("message");
-                long timestamp = rs.getLong("timestamp");
-                String fileName = rs.getString("file_name");
-                byte[] fileData = rs.getBytes("file_data");
-
-                if (fileName != null) {
-                    FileInfo fileInfo = new FileInfo(fileName, fileData);
-                    messages.add(new MessageInfo(sender, recipient, fileInfo, timestamp));
-                } else {
-                    messages.add(new MessageInfo(sender, recipient, message, timestamp));
-                }
+                messages.add(readMessage(rs));
             }
         } catch (SQLException e) {
             System.out.println("Erro ao buscar histórico de mensagens: " + e.getMessage());
@@ -265,42 +854,292 @@ public class DatabaseManager {
         return messages;
     }
 
-    public FileInfo receiveFile(String sender, String recipient, String fileName) throws RemoteException {
-        String sql = "SELECT file_name, file_data FROM messages WHERE sender = ? AND recipient = ? AND file_name = ?";
+    // Até 'limit' mensagens com id menor que beforeId, em ordem cronológica
+    public List<MessageInfo> getMessagesBefore(String user1, String user2, long beforeId, int limit) {
+        List<MessageInfo> messages = queryPage(SQL_MESSAGES_BEFORE, user1, user2, beforeId, limit);
+        Collections.reverse(messages); // A consulta vem do mais novo para o mais antigo
+        return messages;
+    }
+
+    // Até 'limit' mensagens com id maior que afterId, em ordem cronológica
+    public List<MessageInfo> getMessagesAfter(String user1, String user2, long afterId, int limit) {
+        return queryPage(SQL_MESSAGES_AFTER, user1, user2, afterId, limit);
+    }
+
+    public List<MessageInfo> getLatestMessages(String user1, String user2, int limit) {
+        return getMessagesBefore(user1, user2, Long.MAX_VALUE, limit);
+    }
+
+    private List<MessageInfo> queryPage(String sql, String user1, String user2, long cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<MessageInfo> messages = new MessageList();
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = connectReader();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, sender);
-            pstmt.setString(2, recipient);
-            pstmt.setString(3, fileName);
+            pstmt.setString(1, user1);
+            pstmt.setString(2, user2);
+            pstmt.setLong(3, cursor);
+            pstmt.setInt(4, pageSize);
+            pstmt.setString(5, user2);
+            pstmt.setString(6, user1);
+            pstmt.setLong(7, cursor);
+            pstmt.setInt(8, pageSize);
+            pstmt.setInt(9, pageSize);
 
             ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                messages.add(readMessage(rs));
+            }
+        } catch (SQLException e) {
+            System.out.println("Erro ao buscar página do histórico: " + e.getMessage());
+        }
 
+        return messages;
+    }
+
+    private MessageInfo readMessage(ResultSet rs) throws SQLException {
+        String sender = rs.getString("sender");
+        String recipient = rs.getString("recipient");
+        String message = rs.getString("message");
+        long timestamp = rs.getLong("timestamp");
+        String fileName = rs.getString("file_name");
+
+        MessageInfo msg;
+        if (fileName != null) {
+            FileInfo fileInfo = new FileInfo(rs.getLong("id"), fileName, rs.getLong("file_size"),
+                    rs.getString("file_hash"));
+            msg = new MessageInfo(sender, recipient, fileInfo, timestamp);
+        } else {
+            msg = new MessageInfo(sender, recipient, message, timestamp);
+        }
+        msg.setId(rs.getLong("id"));
+        return msg;
+    }
+
+    // Conteúdo do anexo da mensagem messageId; só o remetente e o destinatário podem baixá-lo
+    public FileInfo getAttachment(long messageId, String username) {
+        try {
+            FileInfo descriptor = findAttachment(messageId, username);
+            if (descriptor != null && fitsInline(descriptor.getHash())) {
+                FileInfo file = new FileInfo(descriptor.getFileName(), blobs.read(descriptor.getHash()));
+                file.setHash(descriptor.getHash());
+                return file;
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Erro ao buscar anexo: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Anexos maiores que FileInfo.MAX_CHUNK_SIZE não cabem num FileInfo com conteúdo
+    // (o cliente recusaria): só saem em partes, por readAttachmentChunk
+    private boolean fitsInline(String hash) throws IOException {
+        if (!BlobStore.isValidHash(hash)) {
+            return false; // Linha sem conteúdo no BlobStore
+        }
+        if (blobs.size(hash) <= FileInfo.MAX_CHUNK_SIZE) {
+            return true;
+        }
+        System.out.println("⚠️ Anexo grande demais para baixar inteiro; use o download em partes");
+        return false;
+    }
+
+    // Parte [offset, offset + length) do anexo; vazio no fim do arquivo, null se não encontrado
+    public byte[] readAttachmentChunk(long messageId, String username, long offset, int length) {
+        try {
+            FileInfo descriptor = findAttachment(messageId, username);
+            if (descriptor != null && offset >= 0 && BlobStore.isValidHash(descriptor.getHash())) {
+                return blobs.read(descriptor.getHash(), offset, Math.max(0, Math.min(length, FileInfo.MAX_CHUNK_SIZE)));
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Erro ao ler parte do anexo: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private FileInfo findAttachment(long messageId, String username) throws SQLException {
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_ATTACHMENT)) {
+            pstmt.setLong(1, messageId);
+            pstmt.setString(2, username);
+            pstmt.setString(3, username);
+
+            ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                byte[] fileData = rs.getBytes("file_data");
-                return new FileInfo(fileName, fileData);
+                return new FileInfo(messageId, rs.getString("file_name"), rs.getLong("file_size"),
+                        rs.getString("file_hash"));
             }
+        }
+        return null;
+    }
+
+    public void addPendingDelivery(String username, long messageId) {
+        String sql = "INSERT OR IGNORE INTO pending_deliveries (username, message_id) VALUES (?, ?)";
+        try {
+            write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, username);
+                    pstmt.setLong(2, messageId);
+                    return pstmt.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Erro ao receber arquivo: " + e.getMessage());
+            System.out.println("Erro ao registrar entrega pendente: " + e.getMessage());
         }
-        return null; // Retorna null se o arquivo não for encontrado
     }
 
-    public boolean createGroup(String groupName, String description, String owner) {
-        String sql = "INSERT INTO groups (name, description, owner) VALUES (?, ?, ?)";
+    // As 'limit' mensagens pendentes mais antigas de username, em ordem cronológica
+    public List<MessageInfo> getPendingMessages(String username, int limit) {
+        List<MessageInfo> messages = new MessageList();
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_PENDING_MESSAGES)) {
+            pstmt.setString(1, username);
+            pstmt.setInt(2, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                messages.add(readMessage(rs));
+            }
+        } catch (SQLException e) {
+            System.out.println("Erro ao buscar entregas pendentes: " + e.getMessage());
+        }
+        return messages;
+    }
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, groupName);
-            pstmt.setString(2, description);
-            pstmt.setString(3, owner);
+    public List<Long> getPendingDeliveryIds(String username, int limit) {
+        List<Long> ids = new ArrayList<>();
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_PENDING_IDS)) {
+            pstmt.setString(1, username);
+            pstmt.setInt(2, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getLong("message_id"));
+            }
+        } catch (SQLException e) {
+            System.out.println("Erro ao buscar entregas pendentes: " + e.getMessage());
+        }
+        return ids;
+    }
 
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                addGroupMember(groupName, owner); // O dono do grupo entra automaticamente
-                return true;
+    public List<String> getUsersWithPendingDeliveries() {
+        List<String> users = new ArrayList<>();
+        try (Connection conn = connectReader();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT DISTINCT username FROM pending_deliveries")) {
+            while (rs.next()) {
+                users.add(rs.getString("username"));
             }
+        } catch (SQLException e) {
+            System.out.println("Erro ao buscar entregas pendentes: " + e.getMessage());
+        }
+        return users;
+    }
+
+    // Confirma a entrega de tudo até upToId (inclusive)
+    public void removePendingDeliveries(String username, long upToId) {
+        String sql = "DELETE FROM pending_deliveries WHERE username = ? AND message_id <= ?";
+        try {
+            write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, username);
+                    pstmt.setLong(2, upToId);
+                    return pstmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            System.out.println("Erro ao remover entregas pendentes: " + e.getMessage());
+        }
+    }
+
+    // Avança o cursor de leitura de username na conversa com peer (nunca volta)
+    public boolean markRead(String username, String peer, long upToId) {
+        String sql = "INSERT INTO read_cursors (username, peer, last_read_id) VALUES (?, ?, ?) "
+                + "ON CONFLICT (username, peer) DO UPDATE SET last_read_id = MAX(last_read_id, excluded.last_read_id)";
+        try {
+            return write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, username);
+                    pstmt.setString(2, peer);
+                    pstmt.setLong(3, upToId);
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
+        } catch (SQLException e) {
+            System.out.println("Erro ao marcar conversa como lida: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Não lidas de username em todas as conversas; null se a leitura falhar
+    public UnreadSnapshot getUnreadCounts(String username) {
+        try {
+            return readConsistent(conn -> {
+                long upToId = maxMessageId(conn);
+                Map<String, Integer> counts = new HashMap<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(SQL_UNREAD_COUNTS)) {
+                    pstmt.setString(1, username);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        counts.put(rs.getString("sender"), rs.getInt("unread"));
+                    }
+                }
+                return new UnreadSnapshot(counts, upToId);
+            });
+        } catch (SQLException e) {
+            System.out.println("Erro ao contar mensagens não lidas: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Não lidas de username na conversa com peer; null se a leitura falhar
+    public UnreadSnapshot countUnreadFrom(String username, String peer) {
+        try {
+            return readConsistent(conn -> {
+                long upToId = maxMessageId(conn);
+                try (PreparedStatement pstmt = conn.prepareStatement(SQL_UNREAD_FROM)) {
+                    pstmt.setString(1, peer);
+                    pstmt.setString(2, username);
+                    pstmt.setString(3, username);
+                    pstmt.setString(4, peer);
+                    ResultSet rs = pstmt.executeQuery();
+                    int unread = rs.next() ? rs.getInt(1) : 0;
+                    return new UnreadSnapshot(Map.of(peer, unread), upToId);
+                }
+            });
+        } catch (SQLException e) {
+            System.out.println("Erro ao contar mensagens não lidas: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private long maxMessageId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MAX(id) FROM messages")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    public boolean createGroup(String groupName, String description, String owner) {
+        String sql = "INSERT INTO groups (name, description, owner) VALUES (?, ?, ?)";
+
+        try {
+            return write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, groupName);
+                    pstmt.setString(2, description);
+                    pstmt.setString(3, owner);
+
+                    int affectedRows = pstmt.executeUpdate();
+                    if (affectedRows > 0) {
+                        // O dono do grupo entra automaticamente (mesma conexão: só existe um escritor)
+                        insertGroupMember(conn, groupName, owner);
+                        groupCache.created(groupName, description, owner);
+                        return true;
+                    }
+                    return false;
+                }
+            });
         } catch (SQLException e) {
             System.out.println("Erro ao criar grupo: " + e.getMessage());
         }
@@ -308,69 +1147,137 @@ public class DatabaseManager {
     }
 
     public boolean addGroupMember(String groupName, String username) {
+        try {
+            return write(conn -> insertGroupMember(conn, groupName, username));
+        } catch (SQLException e) {
+            System.out.println("Erro ao adicionar membro ao grupo: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private boolean insertGroupMember(Connection conn, String groupName, String username) throws SQLException {
         String sql = "INSERT INTO group_members (group_name, username) VALUES (?, ?)";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, groupName);
             pstmt.setString(2, username);
 
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            System.out.println("Erro ao adicionar membro ao grupo: " + e.getMessage());
+            boolean inserted = pstmt.executeUpdate() > 0;
+            if (inserted) {
+                groupCache.memberAdded(groupName, username);
+            }
+            return inserted;
         }
-        return false;
     }
 
     public boolean removeGroupMember(String groupName, String username) {
         String sql = "DELETE FROM group_members WHERE group_name = ? AND username = ?";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, groupName);
-            pstmt.setString(2, username);
+        try {
+            return write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, groupName);
+                    pstmt.setString(2, username);
 
-            return pstmt.executeUpdate() > 0;
+                    boolean removed = pstmt.executeUpdate() > 0;
+                    if (removed) {
+                        groupCache.memberRemoved(groupName, username);
+                    }
+                    return removed;
+                }
+            });
         } catch (SQLException e) {
             System.out.println("Erro ao remover membro do grupo: " + e.getMessage());
         }
         return false;
     }
 
-    public void sendGroupMessage(String groupName, String sender, String message) {
-        String sql = "INSERT INTO group_messages (group_name, sender, message, timestamp) VALUES (?, ?, ?, ?)";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    // Grava a mensagem e a devolve com o id (o mesmo cursor de getGroupMessagesAfter); null se falhar
+    public MessageInfo sendGroupMessage(String groupName, String sender, String message) {
+        return storeGroupMessage(new MessageInfo(sender, groupName, message, System.currentTimeMillis()));
+    }
 
-            pstmt.setString(1, groupName);
-            pstmt.setString(2, sender);
-            pstmt.setString(3, message);
-            pstmt.setLong(4, System.currentTimeMillis());
+    // Anexo enviado ao grupo: o conteúdo vai para o BlobStore e a linha guarda só o descritor
+    public MessageInfo storeGroupFile(String groupName, String sender, String fileName, Path content, String hash,
+            long timestamp) {
+        blobs.pin(hash); // Até a linha do grupo estar gravada
+        try {
+            long size = Files.size(content);
+            blobs.putFile(content, hash);
+            return storeGroupMessage(new MessageInfo(sender, groupName, new FileInfo(0, fileName, size, hash),
+                    timestamp));
+        } catch (IOException e) {
+            System.out.println("Erro ao gravar arquivo do grupo: " + e.getMessage());
+            return null;
+        } finally {
+            blobs.release(hash);
+        }
+    }
 
-            pstmt.executeUpdate();
+    private MessageInfo storeGroupMessage(MessageInfo msg) {
+        String sql = "INSERT INTO group_messages (group_name, sender, message, timestamp, file_name, file_size, "
+                + "file_hash) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        FileInfo file = msg.isFile() ? msg.getFile() : null;
+
+        try {
+            return write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setString(1, msg.getRecipient());
+                    pstmt.setString(2, msg.getSender());
+                    pstmt.setString(3, msg.getMessage());
+                    pstmt.setLong(4, msg.getTimestamp());
+
+                    if (file != null) {
+                        pstmt.setString(5, file.getFileName());
+                        pstmt.setLong(6, file.getSize());
+                        pstmt.setString(7, file.getHash());
+                    } else {
+                        pstmt.setNull(5, Types.VARCHAR);
+                        pstmt.setNull(6, Types.INTEGER);
+                        pstmt.setNull(7, Types.VARCHAR);
+                    }
+                    pstmt.executeUpdate();
+
+                    try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            msg.setId(keys.getLong(1));
+                            if (file != null) {
+                                file.setMessageId(msg.getId());
+                            }
+                        }
+                    }
+                    return msg;
+                }
+            });
         } catch (SQLException e) {
             System.out.println("Erro ao enviar mensagem no grupo: " + e.getMessage());
         }
+        return null;
+    }
+
+    // Página do histórico do grupo: até 'limit' mensagens com id menor que beforeId
+    // (Long.MAX_VALUE para a mais recente), em ordem cronológica
+    public List<MessageInfo> getGroupMessages(String groupName, long beforeId, int limit) {
+        return queryGroupMessages(SQL_GROUP_MESSAGES_BEFORE, groupName, beforeId, limit);
+    }
+
+    // Mensagens do grupo posteriores ao cursor afterId (delta para quem já tem o resto)
+    public List<MessageInfo> getGroupMessagesAfter(String groupName, long afterId, int limit) {
+        return queryGroupMessages(SQL_GROUP_MESSAGES_AFTER, groupName, afterId, limit);
     }
 
-    public List<String> getGroupMessages(String groupName) {
-        String sql = "SELECT sender, message, timestamp FROM group_messages WHERE group_name = ? ORDER BY timestamp ASC";
-        List<String> messages = new ArrayList<>();
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
+    private List<MessageInfo> queryGroupMessages(String sql, String groupName, long cursor, int limit) {
+        List<MessageInfo> messages = new MessageList();
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = connectReader();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, groupName);
+            pstmt.setLong(2, cursor);
+            pstmt.setInt(3, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                String sender = rs.getString("sender");
-                String message = rs.getString("message");
-                long timestamp = rs.getLong("timestamp"); // O timestamp no banco é do tipo long
-                String horaFormatada = sdf.format(new Date(timestamp));
-
-                messages.add(sender + ": " + message + " [" + horaFormatada + "]");
+                messages.add(readMessage(rs));
             }
         } catch (SQLException e) {
             System.out.println("Erro ao buscar mensagens do grupo: " + e.getMessage());
@@ -379,13 +1286,43 @@ public class DatabaseManager {
         return messages;
     }
 
+    // Parte de um anexo do grupo; só membros do grupo podem ler (null caso contrário)
+    public byte[] readGroupAttachmentChunk(long messageId, String username, long offset, int length) {
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_GROUP_ATTACHMENT)) {
+            pstmt.setLong(1, messageId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next() && offset >= 0 && BlobStore.isValidHash(rs.getString("file_hash"))
+                    && getGroupMembers(rs.getString("group_name")).contains(username)) {
+                return blobs.read(rs.getString("file_hash"), offset,
+                        Math.max(0, Math.min(length, FileInfo.MAX_CHUNK_SIZE)));
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Erro ao ler parte do anexo do grupo: " + e.getMessage());
+        }
+        return null;
+    }
+
     public boolean deleteGroup(String groupName) {
+        try {
+            Set<String> attachments = new HashSet<>();
+            boolean deleted = write(conn -> deleteGroup(conn, groupName, attachments));
+            sweepBlobs(attachments);
+            return deleted;
+        } catch (SQLException e) {
+            System.out.println("Erro ao excluir grupo: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Os hashes dos anexos das mensagens apagadas vão para attachments (candidatos à limpeza)
+    private boolean deleteGroup(Connection conn, String groupName, Set<String> attachments) throws SQLException {
+        collectAttachments(conn, SQL_GROUP_ATTACHMENT_HASHES, attachments, groupName);
         String deleteMessages = "DELETE FROM group_messages WHERE group_name = ?";
         String deleteMembers = "DELETE FROM group_members WHERE group_name = ?";
         String deleteGroup = "DELETE FROM groups WHERE name = ?";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt1 = conn.prepareStatement(deleteMessages);
+        try (PreparedStatement pstmt1 = conn.prepareStatement(deleteMessages);
                 PreparedStatement pstmt2 = conn.prepareStatement(deleteMembers);
                 PreparedStatement pstmt3 = conn.prepareStatement(deleteGroup)) {
 
@@ -396,57 +1333,88 @@ public class DatabaseManager {
             pstmt2.executeUpdate();
 
             pstmt3.setString(1, groupName);
-            return pstmt3.executeUpdate() > 0;
-
-        } catch (SQLException e) {
-            System.out.println("Erro ao excluir grupo: " + e.getMessage());
+            boolean deleted = pstmt3.executeUpdate() > 0;
+            groupCache.deleted(groupName);
+            return deleted;
         }
-        return false;
     }
 
+    // Cópia do grupo para quem chama (pode ser alterada à vontade); null se não existir
     public GroupInfo getGroupInfo(String groupName) {
+        GroupCache.Group cached = groupCache.get(groupName, this::loadGroup);
+        if (cached == null) {
+            return null;
+        }
+        GroupInfo group = new GroupInfo(groupName, cached.getDescription(), cached.getOwner());
+        for (String member : cached.getMembers()) {
+            group.addMember(member);
+        }
+        return group;
+    }
+
+    // Membros do grupo direto do cache, sem cópia (conjunto imutável); vazio se o grupo não existir
+    public Set<String> getGroupMembers(String groupName) {
+        GroupCache.Group cached = groupCache.get(groupName, this::loadGroup);
+        return cached != null ? cached.getMembers() : Set.of();
+    }
+
+    public long getGroupCacheHits() {
+        return groupCache.getHits();
+    }
+
+    public long getGroupCacheMisses() {
+        return groupCache.getMisses();
+    }
+
+    // Falta no cache: lê o grupo e seus membros do banco (null se não existir ou se a leitura falhar)
+    private GroupCache.Group loadGroup(String groupName) {
         String sql = "SELECT * FROM groups WHERE name = ?";
-        GroupInfo group = null;
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = connectReader();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, groupName);
             ResultSet rs = pstmt.executeQuery();
 
-            if (rs.next()) {
-                String description = rs.getString("description");
-                String owner = rs.getString("owner");
-
-                group = new GroupInfo(groupName, description, owner);
-
-                // Buscar membros do grupo
-                String memberSql = "SELECT username FROM group_members WHERE group_name = ?";
-                try (PreparedStatement memberStmt = conn.prepareStatement(memberSql)) {
-                    memberStmt.setString(1, groupName);
-                    ResultSet memberRs = memberStmt.executeQuery();
-                    while (memberRs.next()) {
-                        group.addMember(memberRs.getString("username"));
-                    }
+            if (!rs.next()) {
+                return null; // Não existe: fica fora do cache
+            }
+            String description = rs.getString("description");
+            String owner = rs.getString("owner");
+
+            // Buscar membros do grupo
+            Set<String> members = new LinkedHashSet<>();
+            try (PreparedStatement memberStmt = conn.prepareStatement(SQL_GROUP_MEMBERS)) {
+                memberStmt.setString(1, groupName);
+                ResultSet memberRs = memberStmt.executeQuery();
+                while (memberRs.next()) {
+                    members.add(memberRs.getString("username"));
                 }
             }
+            return GroupCache.of(groupName, description, owner, members);
         } catch (SQLException e) {
             System.out.println("Erro ao buscar informações do grupo: " + e.getMessage());
         }
-
-        return group;
+        return null;
     }
 
     public boolean changeGroupOwner(String groupName, String newOwner) {
         String sql = "UPDATE groups SET owner = ? WHERE name = ? AND EXISTS (SELECT 1 FROM group_members WHERE group_name = ? AND username = ?)";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, newOwner);
-            pstmt.setString(2, groupName);
-            pstmt.setString(3, groupName);
-            pstmt.setString(4, newOwner);
-
-            return pstmt.executeUpdate() > 0;
+        try {
+            return write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, newOwner);
+                    pstmt.setString(2, groupName);
+                    pstmt.setString(3, groupName);
+                    pstmt.setString(4, newOwner);
+
+                    boolean changed = pstmt.executeUpdate() > 0;
+                    if (changed) {
+                        groupCache.ownerChanged(groupName, newOwner);
+                    }
+                    return changed;
+                }
+            });
         } catch (SQLException e) {
             System.out.println("Erro ao alterar dono do grupo: " + e.getMessage());
         }
@@ -457,7 +1425,7 @@ public class DatabaseManager {
         String sql = "SELECT name FROM groups";
         List<String> groupList = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = connectReader();
                 PreparedStatement pstmt = conn.prepareStatement(sql);
                 ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
@@ -473,12 +1441,15 @@ public class DatabaseManager {
     public boolean requestJoinGroup(String groupName, String username) {
         String sql = "INSERT OR IGNORE INTO pending_requests (group_name, username) VALUES (?, ?)";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupName);
-            stmt.setString(2, username);
-            stmt.executeUpdate();
-            return true;
+        try {
+            return write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, groupName);
+                    stmt.setString(2, username);
+                    stmt.executeUpdate();
+                    return true;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -490,24 +1461,28 @@ public class DatabaseManager {
             String insertSql = "INSERT INTO group_members (group_name, username) VALUES (?, ?)";
             String deleteSql = "DELETE FROM pending_requests WHERE group_name = ? AND username = ?";
 
-            try (Connection conn = DriverManager.getConnection(DB_URL);
-                    PreparedStatement insertStmt = conn.prepareStatement(insertSql);
-                    PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+            try {
+                return write(conn -> {
+                    try (PreparedStatement insertStmt = conn.prepareStatement(insertSql);
+                            PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
 
-                conn.setAutoCommit(false);
+                        conn.setAutoCommit(false);
 
-                // Adicionar usuário ao grupo
-                insertStmt.setString(1, groupName);
-                insertStmt.setString(2, username);
-                insertStmt.executeUpdate();
+                        // Adicionar usuário ao grupo
+                        insertStmt.setString(1, groupName);
+                        insertStmt.setString(2, username);
+                        insertStmt.executeUpdate();
 
-                // Remover solicitação pendente
-                deleteStmt.setString(1, groupName);
-                deleteStmt.setString(2, username);
-                deleteStmt.executeUpdate();
+                        // Remover solicitação pendente
+                        deleteStmt.setString(1, groupName);
+                        deleteStmt.setString(2, username);
+                        deleteStmt.executeUpdate();
 
-                conn.commit();
-                return true;
+                        conn.commit();
+                        groupCache.memberAdded(groupName, username);
+                        return true;
+                    }
+                });
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -516,12 +1491,15 @@ public class DatabaseManager {
             // Apenas remover solicitação se for rejeitada
             String deleteSql = "DELETE FROM pending_requests WHERE group_name = ? AND username = ?";
 
-            try (Connection conn = DriverManager.getConnection(DB_URL);
-                    PreparedStatement stmt = conn.prepareStatement(deleteSql)) {
-                stmt.setString(1, groupName);
-                stmt.setString(2, username);
-                stmt.executeUpdate();
-                return true;
+            try {
+                return write(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(deleteSql)) {
+                        stmt.setString(1, groupName);
+                        stmt.setString(2, username);
+                        stmt.executeUpdate();
+                        return true;
+                    }
+                });
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -533,7 +1511,7 @@ public class DatabaseManager {
         List<String> pendingUsers = new ArrayList<>();
         String sql = "SELECT username FROM pending_requests WHERE group_name = ?";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = connectReader();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, groupName);
             ResultSet rs = stmt.executeQuery();
@@ -548,9 +1526,23 @@ public class DatabaseManager {
     }
 
     public boolean deleteUser(String username) {
+        try {
+            Set<String> attachments = new HashSet<>();
+            boolean deleted = write(conn -> deleteUser(conn, username, attachments));
+            sweepBlobs(attachments);
+            return deleted;
+        } catch (SQLException e) {
+            System.out.println("Erro ao deletar usuário: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private boolean deleteUser(Connection conn, String username, Set<String> attachments) throws SQLException {
         String deleteMessages = "DELETE FROM messages WHERE sender = ? OR recipient = ?";
+        String deletePending = "DELETE FROM pending_deliveries WHERE username = ?";
+        String deleteReadCursors = "DELETE FROM read_cursors WHERE username = ? OR peer = ?";
         String deleteGroupMessages = "DELETE FROM group_messages WHERE sender = ?";
-        String deleteGroupMembers = "DELETE FROM group_members WHERE username = ?";
+        String deleteGroupMembers = SQL_DELETE_USER_MEMBERSHIPS;
         String deleteGroups = "DELETE FROM groups WHERE owner = ?"; // Isso pode ser perigoso se não tratar os grupos
                                                                     // órfãos ou deletar tudo
         // Na verdade, se deletar o grupo, precisa deletar os membros e mensagens
@@ -571,46 +1563,110 @@ public class DatabaseManager {
         String selectOwnedGroups = "SELECT name FROM groups WHERE owner = ?";
         String deleteUser = "DELETE FROM users WHERE username = ?";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+        // 1. Deletar mensagens privadas
+        collectAttachments(conn, SQL_USER_ATTACHMENT_HASHES, attachments, username, username, username);
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteMessages)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, username);
+            pstmt.executeUpdate();
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(deletePending)) {
+            pstmt.setString(1, username);
+            pstmt.executeUpdate();
+        }
 
-            // 1. Deletar mensagens privadas
-            try (PreparedStatement pstmt = conn.prepareStatement(deleteMessages)) {
-                pstmt.setString(1, username);
-                pstmt.setString(2, username);
-                pstmt.executeUpdate();
-            }
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteReadCursors)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, username);
+            pstmt.executeUpdate();
+        }
 
-            // 2. Deletar mensagens de grupo
-            try (PreparedStatement pstmt = conn.prepareStatement(deleteGroupMessages)) {
-                pstmt.setString(1, username);
-                pstmt.executeUpdate();
-            }
+        // 2. Deletar mensagens de grupo
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteGroupMessages)) {
+            pstmt.setString(1, username);
+            pstmt.executeUpdate();
+        }
 
-            // 3. Remover de grupos
-            try (PreparedStatement pstmt = conn.prepareStatement(deleteGroupMembers)) {
-                pstmt.setString(1, username);
-                pstmt.executeUpdate();
+        // 3. Remover de grupos
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteGroupMembers)) {
+            pstmt.setString(1, username);
+            pstmt.executeUpdate();
+        }
+
+        // 4. Deletar grupos que ele é dono
+        List<String> ownedGroups = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(selectOwnedGroups)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                ownedGroups.add(rs.getString("name"));
             }
+        }
+        for (String groupName : ownedGroups) {
+            try {
+                deleteGroup(conn, groupName, attachments); // Reutiliza a limpeza do grupo na mesma conexão de escrita
+            } catch (SQLException e) {
+                System.out.println("Erro ao excluir grupo: " + e.getMessage());
+            }
+        }
 
-            // 4. Deletar grupos que ele é dono
-            try (PreparedStatement pstmt = conn.prepareStatement(selectOwnedGroups)) {
-                pstmt.setString(1, username);
-                ResultSet rs = pstmt.executeQuery();
-                while (rs.next()) {
-                    deleteGroup(rs.getString("name")); // Reutiliza o método existente que limpa tudo do grupo
-                }
+        groupCache.userDeleted(username);
+
+        // 5. Deletar o usuário
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteUser)) {
+            pstmt.setString(1, username);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    // Hashes dos anexos que a consulta devolve (parâmetros na ordem dos "?")
+    private static void collectAttachments(Connection conn, String sql, Set<String> attachments, String... params)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setString(i + 1, params[i]);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                attachments.add(rs.getString(1));
             }
+        }
+    }
 
-            // 5. Deletar o usuário
-            try (PreparedStatement pstmt = conn.prepareStatement(deleteUser)) {
-                pstmt.setString(1, username);
-                return pstmt.executeUpdate() > 0;
+    // Depois de apagar mensagens, remove do BlobStore os anexos que nenhuma linha
+    // (privada ou de grupo) referencia mais. Só olha os hashes das linhas apagadas,
+    // então não percorre o store inteiro
+    private void sweepBlobs(Set<String> attachments) {
+        int removed = 0;
+        for (String hash : attachments) {
+            if (!BlobStore.isValidHash(hash)) {
+                continue;
             }
+            try {
+                if (blobs.deleteIfUnreferenced(hash, this::isBlobReferenced)) {
+                    removed++;
+                }
+            } catch (IOException e) {
+                System.out.println("Erro ao apagar anexo sem referência: " + e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            System.out.println("🧹 " + removed + " anexos sem referência removidos de " + BLOB_DIR);
+        }
+    }
 
+    // Na dúvida (erro de leitura) o blob é mantido
+    private boolean isBlobReferenced(String hash) {
+        try (Connection conn = connectReader();
+                PreparedStatement pstmt = conn.prepareStatement(SQL_BLOB_REFERENCED)) {
+            pstmt.setString(1, hash);
+            pstmt.setString(2, hash);
+            return pstmt.executeQuery().next();
         } catch (SQLException e) {
-            System.out.println("Erro ao deletar usuário: " + e.getMessage());
+            System.out.println("Erro ao verificar referências do anexo: " + e.getMessage());
+            return true;
         }
-        return false;
     }
 
 }
@@ -0,0 +1,167 @@
+package chat.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Thread única de escrita usada no modo WAL: todas as escritas entram numa fila
+// e são executadas em ordem pela mesma thread, com a conexão de escrita do pool.
+// Assim as threads RMI nunca disputam o lock de escrita do SQLite entre si, e as
+// leituras (que no WAL não esperam pelo escritor) seguem em paralelo.
+public class DatabaseWriter {
+    private final ConnectionPool pool;
+    private final long checkpointIdleMillis;
+    private final long timeoutMillis; // Espera máxima de execute() pela sua tarefa
+    private final BlockingQueue<WriteTask<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long writesSinceCheckpoint = 0;
+
+    private static class WriteTask<T> {
+        private final SqlWork<T> work;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        WriteTask(SqlWork<T> work) {
+            this.work = work;
+        }
+
+        void run(Connection conn) {
+            try {
+                result.complete(work.execute(conn));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                resetTransaction(conn);
+            }
+        }
+
+        // A conexão é reaproveitada pela próxima tarefa da fila, então não pode
+        // sobrar transação aberta de uma tarefa que falhou no meio
+        private static void resetTransaction(Connection conn) {
+            try {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                System.out.println("Erro ao restaurar a conexão de escrita: " + e.getMessage());
+            }
+        }
+    }
+
+    public DatabaseWriter(ConnectionPool pool, long checkpointIdleMillis, long timeoutMillis) {
+        this.pool = pool;
+        this.checkpointIdleMillis = checkpointIdleMillis;
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.thread = new Thread(this::runLoop, "whatsut-db-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Enfileira a escrita e espera a thread de escrita concluí-la
+    public <T> T execute(SqlWork<T> work) throws SQLException {
+        return await(submit(work), timeoutMillis);
+    }
+
+    // Só enfileira; o future completa quando a thread de escrita rodar a tarefa
+    public <T> CompletableFuture<T> submit(SqlWork<T> work) throws SQLException {
+        if (!running) {
+            throw new SQLException("Thread de escrita encerrada");
+        }
+        WriteTask<T> task = new WriteTask<>(work);
+        queue.add(task);
+        return task.result;
+    }
+
+    // Espera o resultado de uma escrita (sem limite se timeoutMillis <= 0). Ao esgotar o
+    // tempo lança SQLTimeoutException: a escrita continua na fila e ainda pode acontecer,
+    // então quem chamou não pode tratar isso como falha
+    static <T> T await(CompletableFuture<T> result, long timeoutMillis) throws SQLException {
+        try {
+            return timeoutMillis > 0 ? result.get(timeoutMillis, TimeUnit.MILLISECONDS) : result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando escrita", e);
+        } catch (TimeoutException e) {
+            throw new SQLTimeoutException("Tempo esgotado aguardando escrita (" + timeoutMillis + " ms)", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Erro na thread de escrita", cause);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Conclui as escritas pendentes e faz um checkpoint final do WAL
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runLoop() {
+        while (running || !queue.isEmpty()) {
+            WriteTask<?> task;
+            try {
+                task = queue.poll(checkpointIdleMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                task = queue.poll(); // Encerrando: ainda drena o que restou
+            }
+
+            if (task == null) {
+                // Fila ociosa: aproveita para mover o WAL de volta ao banco principal
+                if (writesSinceCheckpoint > 0) {
+                    checkpoint("PASSIVE");
+                }
+                continue;
+            }
+
+            try (Connection conn = pool.writer()) {
+                // Executa a tarefa e, aproveitando a conexão, o que mais já estiver na fila
+                while (task != null) {
+                    task.run(conn);
+                    writesSinceCheckpoint++;
+                    task = queue.poll();
+                }
+            } catch (SQLException e) {
+                task.result.completeExceptionally(e);
+            }
+        }
+        checkpoint("TRUNCATE");
+        // Um execute() que passou pelo teste de running junto com o shutdown pode ter
+        // enfileirado depois da última volta: falha em vez de deixá-lo esperando
+        WriteTask<?> orphan;
+        while ((orphan = queue.poll()) != null) {
+            orphan.result.completeExceptionally(new SQLException("Thread de escrita encerrada"));
+        }
+    }
+
+    private void checkpoint(String mode) {
+        try (Connection conn = pool.writer();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(" + mode + ")");
+            writesSinceCheckpoint = 0;
+        } catch (SQLException e) {
+            System.out.println("Erro ao fazer checkpoint do WAL: " + e.getMessage());
+        }
+    }
+}
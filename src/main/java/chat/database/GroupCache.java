@@ -0,0 +1,156 @@
+package chat.database;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Cache write-through dos grupos (dono, descrição e membros). Uma falta carrega o
+// grupo do banco uma vez; depois, cada escrita que mexe no grupo atualiza a entrada
+// logo após o comando, ainda dentro da escrita, então as atualizações chegam ao
+// cache na mesma ordem em que chegaram ao banco. Só grupos existentes ficam no
+// cache: um nome qualquer não pode fazer o mapa crescer, então o tamanho é limitado
+// pelo número de grupos. As entradas são imutáveis: quem recebe o conjunto de
+// membros pode percorrê-lo sem lock enquanto outra thread troca a entrada.
+public class GroupCache {
+
+    public static final class Group {
+        private final String name;
+        private final String description;
+        private final String owner;
+        private final Set<String> members;
+
+        Group(String name, String description, String owner, Set<String> members) {
+            this.name = name;
+            this.description = description;
+            this.owner = owner;
+            this.members = Collections.unmodifiableSet(members);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public Set<String> getMembers() {
+            return members;
+        }
+
+        private Group withMembers(Set<String> members) {
+            return new Group(name, description, owner, members);
+        }
+
+        private Group withOwner(String owner) {
+            return new Group(name, description, owner, members);
+        }
+    }
+
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(); // Avança a cada alteração vinda de uma escrita
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // O grupo, carregado por loader na primeira vez; null se não existir ou se a
+    // leitura falhar (loader devolve null nos dois casos, e nada fica no cache).
+    // A leitura do banco roda fora do mapa, sem travar outras chaves; se alguma
+    // escrita mexeu no cache durante a leitura, o resultado pode estar velho e não
+    // é guardado (a próxima falta lê de novo)
+    public Group get(String name, Function<String, Group> loader) {
+        Group group = groups.get(name);
+        if (group != null) {
+            hits.incrementAndGet();
+            return group;
+        }
+        misses.incrementAndGet();
+        long before = version.get();
+        Group loaded = loader.apply(name);
+        if (loaded == null || version.get() != before) {
+            return loaded;
+        }
+        Group raced = groups.putIfAbsent(name, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    public static Group of(String name, String description, String owner, Set<String> members) {
+        return new Group(name, description, owner, new LinkedHashSet<>(members));
+    }
+
+    void created(String name, String description, String owner) {
+        version.incrementAndGet();
+        groups.put(name, of(name, description, owner, Set.of(owner)));
+    }
+
+    void memberAdded(String name, String username) {
+        version.incrementAndGet();
+        groups.computeIfPresent(name, (key, group) -> {
+            if (group.members.contains(username)) {
+                return group;
+            }
+            Set<String> members = new LinkedHashSet<>(group.members);
+            members.add(username);
+            return group.withMembers(members);
+        });
+    }
+
+    void memberRemoved(String name, String username) {
+        version.incrementAndGet();
+        groups.computeIfPresent(name, (key, group) -> {
+            if (!group.members.contains(username)) {
+                return group;
+            }
+            Set<String> members = new LinkedHashSet<>(group.members);
+            members.remove(username);
+            return group.withMembers(members);
+        });
+    }
+
+    void ownerChanged(String name, String newOwner) {
+        version.incrementAndGet();
+        groups.computeIfPresent(name, (key, group) -> group.withOwner(newOwner));
+    }
+
+    void deleted(String name) {
+        version.incrementAndGet();
+        groups.remove(name);
+    }
+
+    // Usuário excluído: sai de todos os grupos e os grupos dele deixam de existir
+    void userDeleted(String username) {
+        version.incrementAndGet();
+        for (String name : groups.keySet()) {
+            groups.computeIfPresent(name, (key, group) -> {
+                if (username.equals(group.owner)) {
+                    return null; // Remove a entrada
+                }
+                if (!group.members.contains(username)) {
+                    return group;
+                }
+                Set<String> members = new LinkedHashSet<>(group.members);
+                members.remove(username);
+                return group.withMembers(members);
+            });
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return groups.size();
+    }
+}
@@ -0,0 +1,159 @@
+package chat.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import chat.info.MessageInfo;
+
+// Estágio de "group commit" para mensagens privadas: as mensagens que chegam
+// dentro de uma pequena janela de tempo (ou até encher o lote) são gravadas
+// juntas numa única transação, trocando um fsync por mensagem por um por lote.
+// O future devolvido por enqueue() completa depois que o lote inteiro foi
+// confirmado, ou com erro se a gravação falhar.
+public class MessageBatcher {
+
+    // Grava um lote inteiro de mensagens numa transação. Tem que ser idempotente
+    // (uma mensagem já gravada não é inserida de novo): devolve, na ordem do lote,
+    // se cada mensagem foi inserida agora
+    @FunctionalInterface
+    public interface BatchSink {
+        boolean[] insert(List<MessageInfo> batch) throws SQLException;
+    }
+
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    private static class Pending {
+        private final MessageInfo message;
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>(); // true se foi inserida
+
+        Pending(MessageInfo message) {
+            this.message = message;
+        }
+    }
+
+    private final BatchSink sink;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public MessageBatcher(BatchSink sink, long windowMillis, int maxBatchSize) {
+        this.sink = sink;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.thread = new Thread(this::runLoop, "whatsut-message-batcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Enfileira a mensagem; o future diz se ela foi inserida (false: o mesmo envio já
+    // estava gravado) quando o lote que a contém estiver confirmado
+    public CompletableFuture<Boolean> enqueue(MessageInfo message) throws SQLException {
+        if (!running) {
+            throw new SQLException("Gravação em lote encerrada");
+        }
+        Pending pending = new Pending(message);
+        queue.add(pending);
+        return pending.done;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Grava o que ainda estiver na fila e para a thread. Não interrompe a thread
+    // para não abortar um lote que esteja no meio da gravação.
+    public void shutdown() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        // Um enqueue() que passou pelo teste de running junto com o shutdown pode ter
+        // enfileirado depois da última volta: falha em vez de deixá-lo esperando
+        Pending orphan;
+        while ((orphan = queue.poll()) != null) {
+            orphan.done.completeExceptionally(new SQLException("Gravação em lote encerrada"));
+        }
+    }
+
+    // Espera a primeira mensagem e junta as que chegarem até fechar a janela ou encher o lote
+    private void collect(List<Pending> batch) throws InterruptedException {
+        Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return; // Nada chegou; volta ao laço para checar se ainda está rodando
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<MessageInfo> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            messages.add(pending.message);
+        }
+
+        try {
+            boolean[] inserted = sink.insert(messages);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).done.complete(inserted[i]);
+            }
+            return;
+        } catch (Throwable e) {
+            // Qualquer erro (não só de SQL) falha só este lote; a thread continua atendendo
+            if (batch.size() == 1) {
+                batch.get(0).done.completeExceptionally(e);
+                return;
+            }
+            System.out.println("Erro ao gravar lote de " + batch.size() + " mensagens, gravando uma a uma: "
+                    + e.getMessage());
+        }
+
+        // Regrava individualmente para que uma mensagem problemática não derrube as
+        // outras. Mesmo que o lote tenha sido confirmado antes do erro, o sink não
+        // insere de novo uma mensagem já gravada (só devolve o id dela)
+        for (Pending pending : batch) {
+            try {
+                pending.done.complete(sink.insert(List.of(pending.message))[0]);
+            } catch (Throwable e) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+}
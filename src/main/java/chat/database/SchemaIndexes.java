@@ -0,0 +1,111 @@
+package chat.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Conjunto versionado de índices secundários. A versão aplicada fica gravada
+// no próprio banco (PRAGMA user_version); na inicialização só rodam as versões
+// que o arquivo ainda não tem. Para adicionar índices, crie uma nova versão no
+// final de VERSIONS em vez de alterar uma versão já publicada.
+public class SchemaIndexes {
+    private static final List<List<String>> VERSIONS = List.of(
+            // Versão 1: conversas privadas, busca de anexo e membros por usuário
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_messages_conversation "
+                            + "ON messages (sender, recipient, timestamp)",
+                    "CREATE INDEX IF NOT EXISTS idx_messages_file "
+                            + "ON messages (file_name, sender, recipient) WHERE file_name IS NOT NULL",
+                    "CREATE INDEX IF NOT EXISTS idx_group_members_user ON group_members (username)"),
+            // Versão 2: paginação do histórico por cursor de id dentro de cada direção da conversa
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_messages_conversation_id "
+                            + "ON messages (sender, recipient, id)"),
+            // Versão 3: contagem de não lidas por destinatário
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_messages_recipient "
+                            + "ON messages (recipient, sender, id)"),
+            // Versão 4: histórico de grupo paginado por id
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_group_messages_group_id "
+                            + "ON group_messages (group_name, id)"),
+            // Versão 5: um envio (remetente + id escolhido pelo cliente) vira no máximo uma linha;
+            // linhas antigas têm client_msg_id nulo, e nulos não conflitam entre si
+            List.of(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_messages_client_id "
+                            + "ON messages (sender, client_msg_id)"),
+            // Versão 6: limpeza de anexos procura quem ainda referencia um blob
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_messages_file_hash "
+                            + "ON messages (file_hash) WHERE file_hash IS NOT NULL",
+                    "CREATE INDEX IF NOT EXISTS idx_group_messages_file_hash "
+                            + "ON group_messages (file_hash) WHERE file_hash IS NOT NULL"));
+
+    public static int latestVersion() {
+        return VERSIONS.size();
+    }
+
+    // Cria os índices das versões ainda não aplicadas, numa única transação
+    public static void apply(Connection conn) throws SQLException {
+        int current = currentVersion(conn);
+        if (current >= latestVersion()) {
+            return;
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            for (int version = current + 1; version <= latestVersion(); version++) {
+                for (String ddl : VERSIONS.get(version - 1)) {
+                    stmt.execute(ddl);
+                }
+            }
+            stmt.execute("PRAGMA user_version = " + latestVersion());
+            conn.commit();
+            System.out.println("✅ Índices atualizados da versão " + current + " para " + latestVersion());
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Roda EXPLAIN QUERY PLAN em cada consulta e devolve as que fazem varredura
+    // completa de alguma tabela (linha "SCAN <tabela>" sem "USING ... INDEX").
+    // "SCAN (subquery-N)" percorre o resultado já limitado de uma subconsulta e não conta.
+    public static List<String> findFullScans(Connection conn, Map<String, String> queries) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            for (String step : explain(conn, query.getValue())) {
+                if (step.startsWith("SCAN ") && !step.startsWith("SCAN (") && !step.contains("INDEX")) {
+                    problems.add(query.getKey() + ": " + step);
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static List<String> explain(Connection conn, String sql) throws SQLException {
+        List<String> steps = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+                ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                steps.add(rs.getString("detail"));
+            }
+        }
+        return steps;
+    }
+}
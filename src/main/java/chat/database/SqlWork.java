@@ -0,0 +1,10 @@
+package chat.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Trabalho executado com uma conexão emprestada do pool
+@FunctionalInterface
+public interface SqlWork<T> {
+    T execute(Connection conn) throws SQLException;
+}
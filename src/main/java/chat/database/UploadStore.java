@@ -0,0 +1,202 @@
+package chat.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import chat.info.FileInfo;
+import chat.utils.HashUtil;
+
+// Sessões de upload em partes. Cada parte é gravada direto num arquivo temporário
+// no disco, então a memória usada fica limitada ao tamanho da parte e não ao do
+// arquivo. O offset gravado no servidor é a referência para retomar um upload
+// interrompido; na conclusão o tamanho e o SHA-256 são conferidos.
+public class UploadStore {
+
+    public static class Upload {
+        private final String id;
+        private final String sender;
+        private final String recipient; // Usuário ou, se toGroup, nome do grupo
+        private final boolean toGroup;
+        private final String fileName;
+        private final long size;
+        private final String hash;
+        private final Path file;
+        private final ReentrantLock lock = new ReentrantLock(); // Lock: a escrita em disco não prende a thread virtual
+        private long offset = 0;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        Upload(String id, String sender, String recipient, boolean toGroup, String fileName, long size, String hash,
+                Path file) {
+            this.id = id;
+            this.sender = sender;
+            this.recipient = recipient;
+            this.toGroup = toGroup;
+            this.fileName = fileName;
+            this.size = size;
+            this.hash = hash;
+            this.file = file;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getRecipient() {
+            return recipient;
+        }
+
+        public boolean isToGroup() {
+            return toGroup;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+    }
+
+    private final Path directory;
+    private final long maxFileSize;
+    private final long idleTimeoutMillis;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    public UploadStore(Path directory, long maxFileSize, long idleTimeoutMillis) {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    // Abre uma sessão; retorna null se o tamanho ou o hash declarados forem inválidos
+    public Upload begin(String sender, String recipient, String fileName, long size, String hash)
+            throws IOException {
+        return begin(sender, recipient, false, fileName, size, hash);
+    }
+
+    public Upload begin(String sender, String recipient, boolean toGroup, String fileName, long size, String hash)
+            throws IOException {
+        purgeExpired();
+        if (size < 0 || size > maxFileSize || hash == null || hash.length() != 64) {
+            return null;
+        }
+
+        Files.createDirectories(directory);
+        String id = UUID.randomUUID().toString();
+        Path file = directory.resolve(id + ".part");
+        Files.createFile(file);
+
+        Upload upload = new Upload(id, sender, recipient, toGroup, fileName, size, hash.toLowerCase(), file);
+        uploads.put(id, upload);
+        return upload;
+    }
+
+    // Bytes já recebidos; -1 se a sessão não existe (expirou ou já foi concluída)
+    public long offset(String id) {
+        Upload upload = uploads.get(id);
+        if (upload == null) {
+            return -1;
+        }
+        upload.lock.lock();
+        try {
+            return upload.offset;
+        } finally {
+            upload.lock.unlock();
+        }
+    }
+
+    // Grava a parte se ela começar exatamente onde o servidor parou. Retorna o novo
+    // offset, ou o offset atual quando a parte não se encaixa (o cliente retoma dali).
+    public long append(String id, long offset, byte[] chunk) throws IOException {
+        Upload upload = uploads.get(id);
+        if (upload == null) {
+            return -1;
+        }
+        if (chunk == null || chunk.length > FileInfo.MAX_CHUNK_SIZE) {
+            throw new IOException("Parte de upload maior que " + FileInfo.MAX_CHUNK_SIZE + " bytes");
+        }
+
+        upload.lock.lock();
+        try {
+            if (offset != upload.offset || upload.offset + chunk.length > upload.size) {
+                return upload.offset;
+            }
+            try (FileChannel channel = FileChannel.open(upload.file, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                long position = offset;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            upload.offset += chunk.length;
+            upload.lastActivity = System.currentTimeMillis();
+            return upload.offset;
+        } finally {
+            upload.lock.unlock();
+        }
+    }
+
+    // Encerra a sessão e confere o conteúdo. Retorna o upload pronto para ser gravado,
+    // ou null se faltarem bytes ou o hash não bater (nesse caso o arquivo é descartado).
+    public Upload complete(String id) throws IOException {
+        Upload upload = uploads.remove(id);
+        if (upload == null) {
+            return null;
+        }
+
+        upload.lock.lock();
+        try {
+            if (upload.offset != upload.size || !upload.hash.equals(HashUtil.sha256Hex(upload.file))) {
+                discard(upload);
+                return null;
+            }
+        } finally {
+            upload.lock.unlock();
+        }
+        return upload;
+    }
+
+    // Apaga o arquivo temporário de uma sessão encerrada
+    public void discard(Upload upload) {
+        try {
+            Files.deleteIfExists(upload.file);
+        } catch (IOException e) {
+            System.out.println("Erro ao apagar upload temporário: " + e.getMessage());
+        }
+    }
+
+    public int getActiveUploads() {
+        return uploads.size();
+    }
+
+    private void purgeExpired() {
+        long limit = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Upload upload : uploads.values()) {
+            if (upload.lastActivity < limit && uploads.remove(upload.id, upload)) {
+                discard(upload);
+                System.out.println("⚠️ Upload abandonado descartado: " + upload.fileName);
+            }
+        }
+    }
+}
@@ -1,14 +1,55 @@
 package chat.info;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
-public class FileInfo implements Serializable {
+import chat.utils.WireFormat;
+
+// Anexo de uma mensagem. No histórico vem só o descritor (id da mensagem, nome,
+// tamanho e hash) com fileData nulo; os bytes só trafegam quando o anexo é baixado.
+// Conteúdo junto do descritor só até MAX_CHUNK_SIZE; maiores vão em partes (FileTransfer).
+// No RMI vai no formato compacto de WireFormat, com o hash em 32 bytes crus.
+public class FileInfo implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    private static final int HASH_PACKED = 1;
+    private static final int HASH_TEXT = 2;
+    private static final int HAS_DATA = 4;
+
+    public static final int CHUNK_SIZE = 256 * 1024; // Tamanho das partes no upload/download em partes
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024; // Maior parte aceita pelo servidor
+
+    private long messageId; // Mensagem que carrega o anexo (0 enquanto não foi gravada)
     private String fileName;
     private byte[] fileData;
+    private long size;
+    private String hash; // SHA-256 do conteúdo, em hexadecimal
+
+    // Usado só pela desserialização
+    public FileInfo() {
+    }
 
     public FileInfo(String fileName, byte[] fileData) {
         this.fileName = fileName;
         this.fileData = fileData;
+        this.size = fileData != null ? fileData.length : 0;
+    }
+
+    // Descritor leve, sem o conteúdo
+    public FileInfo(long messageId, String fileName, long size, String hash) {
+        this.messageId = messageId;
+        this.fileName = fileName;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(long messageId) {
+        this.messageId = messageId;
     }
 
     public String getFileName() {
@@ -18,5 +59,56 @@ public class FileInfo implements Serializable {
     public byte[] getFileData() {
         return fileData;
     }
-}
 
+    public boolean hasData() {
+        return fileData != null;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int flags = WireFormat.canPackHash(hash) ? HASH_PACKED : hash != null ? HASH_TEXT : 0;
+        if (fileData != null) {
+            flags |= HAS_DATA;
+        }
+        WireFormat.writeVarLong(out, messageId);
+        WireFormat.writeString(out, fileName);
+        WireFormat.writeVarLong(out, size);
+        out.writeByte(flags);
+        if ((flags & HASH_PACKED) != 0) {
+            WireFormat.writePackedHash(out, hash);
+        } else if ((flags & HASH_TEXT) != 0) {
+            WireFormat.writeString(out, hash);
+        }
+        if (fileData != null) {
+            WireFormat.writeBytes(out, fileData);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        messageId = WireFormat.readVarLong(in);
+        fileName = WireFormat.readString(in);
+        size = WireFormat.readVarLong(in);
+        int flags = in.readUnsignedByte();
+        if ((flags & HASH_PACKED) != 0) {
+            hash = WireFormat.readPackedHash(in);
+        } else if ((flags & HASH_TEXT) != 0) {
+            hash = WireFormat.readString(in);
+        }
+        if ((flags & HAS_DATA) != 0) {
+            fileData = WireFormat.readBytes(in, MAX_CHUNK_SIZE);
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package chat.info;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.*;
 
-public class GroupInfo implements Serializable {
+import chat.utils.WireFormat;
+
+public class GroupInfo implements Externalizable {
     private static final long serialVersionUID = 1L;
 
     private String name;
@@ -13,6 +18,11 @@ public class GroupInfo implements Serializable {
     private List<String> messages;
     private Set<String> pendingRequests; // Solicitações pendentes
 
+    // Usado só pela desserialização
+    public GroupInfo() {
+        this(null, null, null);
+    }
+
     public GroupInfo(String name, String description, String owner) {
         this.name = name;
         this.description = description;
@@ -74,6 +84,51 @@ public class GroupInfo implements Serializable {
         pendingRequests.remove(username);
     }
 
+    // Dono, membros e pedidos costumam repetir nomes: todos passam pela mesma tabela
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        WireFormat.NameWriter names = new WireFormat.NameWriter();
+        WireFormat.writeString(out, name);
+        WireFormat.writeString(out, description);
+        names.write(out, owner);
+        writeNames(out, names, members);
+        writeNames(out, names, pendingRequests);
+        WireFormat.writeVarInt(out, messages.size());
+        for (String message : messages) {
+            WireFormat.writeString(out, message);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        WireFormat.NameReader names = new WireFormat.NameReader();
+        name = WireFormat.readString(in);
+        description = WireFormat.readString(in);
+        owner = names.read(in);
+        readNames(in, names, members);
+        readNames(in, names, pendingRequests);
+        int count = WireFormat.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            messages.add(WireFormat.readString(in));
+        }
+    }
+
+    private static void writeNames(ObjectOutput out, WireFormat.NameWriter names, Collection<String> values)
+            throws IOException {
+        WireFormat.writeVarInt(out, values.size());
+        for (String value : values) {
+            names.write(out, value);
+        }
+    }
+
+    private static void readNames(ObjectInput in, WireFormat.NameReader names, Collection<String> values)
+            throws IOException {
+        int count = WireFormat.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            values.add(names.read(in));
+        }
+    }
+
     @Override
     public String toString() {
         return "Group{name='" + name + "', owner='" + owner + "', members=" + members.size() + "}";
@@ -1,17 +1,35 @@
 package chat.info;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
-public class MessageInfo implements Serializable {
+import chat.utils.WireFormat;
+
+// No RMI vai no formato compacto de WireFormat; listas de mensagens vão dentro de
+// uma MessageList, que compartilha os nomes e codifica id e hora como diferenças
+public class MessageInfo implements Externalizable {
     private static final long serialVersionUID = 1L;
+    private static final int IS_FILE = 1;
+    private static final int HAS_FILE = 2;
+
+    private long id; // Id da linha no banco (0 enquanto não foi gravada); usado como cursor de paginação
     private String sender;
     private String recipient;
     private String message;
     private long timestamp;
     private FileInfo file;  // Pode ser um arquivo ou null
     private boolean isFile; // Indica se é uma mensagem de arquivo ou texto
+    // Só no servidor (não vai pela rede): id do envio escolhido pelo remetente; junto com
+    // o remetente, impede que o mesmo envio seja gravado duas vezes
+    private transient long clientMessageId;
+
+    // Usado só pela desserialização
+    public MessageInfo() {
+    }
 
     public MessageInfo(String sender, String recipient, String message, long timestamp) {
         this.sender = sender;
@@ -29,6 +47,26 @@ public class MessageInfo implements Serializable {
         this.file = file;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getClientMessageId() {
+        return clientMessageId;
+    }
+
+    public void setClientMessageId(long clientMessageId) {
+        this.clientMessageId = clientMessageId;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public String getSender() {
         return sender;
     }
@@ -53,6 +91,47 @@ public class MessageInfo implements Serializable {
         return isFile;
     }
 
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        WireFormat.writeVarLong(out, id);
+        WireFormat.writeVarLong(out, timestamp);
+        writeBody(out, new WireFormat.NameWriter());
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        id = WireFormat.readVarLong(in);
+        timestamp = WireFormat.readVarLong(in);
+        readBody(in, new WireFormat.NameReader());
+    }
+
+    // Tudo menos id e hora, que a MessageList grava como diferença para a mensagem anterior
+    void writeBody(ObjectOutput out, WireFormat.NameWriter names) throws IOException {
+        names.write(out, sender);
+        names.write(out, recipient);
+        out.writeByte((isFile ? IS_FILE : 0) | (file != null ? HAS_FILE : 0));
+        if (file != null) {
+            file.writeExternal(out);
+        }
+        if (!isFile) {
+            WireFormat.writeString(out, message);
+        }
+    }
+
+    void readBody(ObjectInput in, WireFormat.NameReader names) throws IOException {
+        sender = names.read(in);
+        recipient = names.read(in);
+        int flags = in.readUnsignedByte();
+        isFile = (flags & IS_FILE) != 0;
+        if ((flags & HAS_FILE) != 0) {
+            file = new FileInfo();
+            file.readExternal(in);
+        }
+        if (!isFile) {
+            message = WireFormat.readString(in);
+        }
+    }
+
     @Override
     public String toString() {
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
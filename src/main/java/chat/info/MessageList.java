@@ -0,0 +1,90 @@
+package chat.info;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import chat.utils.WireFormat;
+
+// Lista de mensagens devolvida pelo servidor (histórico, páginas, pendentes). Numa
+// página as mensagens têm ids e horários próximos e poucos remetentes diferentes:
+// id e hora vão como diferença para a mensagem anterior e os nomes passam por uma
+// única tabela, em vez de cada MessageInfo gravar tudo por extenso.
+public class MessageList extends AbstractList<MessageInfo> implements Externalizable, RandomAccess {
+    private static final long serialVersionUID = 1L;
+
+    private List<MessageInfo> messages;
+
+    // Usado só pela desserialização
+    public MessageList() {
+        this.messages = new ArrayList<>();
+    }
+
+    public MessageList(Collection<MessageInfo> messages) {
+        this.messages = new ArrayList<>(messages);
+    }
+
+    @Override
+    public MessageInfo get(int index) {
+        return messages.get(index);
+    }
+
+    @Override
+    public int size() {
+        return messages.size();
+    }
+
+    @Override
+    public MessageInfo set(int index, MessageInfo msg) {
+        return messages.set(index, msg);
+    }
+
+    @Override
+    public void add(int index, MessageInfo msg) {
+        messages.add(index, msg);
+    }
+
+    @Override
+    public MessageInfo remove(int index) {
+        return messages.remove(index);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        WireFormat.NameWriter names = new WireFormat.NameWriter();
+        WireFormat.writeVarInt(out, messages.size());
+        long previousId = 0;
+        long previousTimestamp = 0;
+        for (MessageInfo msg : messages) {
+            WireFormat.writeSignedVarLong(out, msg.getId() - previousId);
+            WireFormat.writeSignedVarLong(out, msg.getTimestamp() - previousTimestamp);
+            msg.writeBody(out, names);
+            previousId = msg.getId();
+            previousTimestamp = msg.getTimestamp();
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        WireFormat.NameReader names = new WireFormat.NameReader();
+        int count = WireFormat.readVarInt(in);
+        messages = new ArrayList<>(Math.min(count, 1024));
+        long id = 0;
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            id += WireFormat.readSignedVarLong(in);
+            timestamp += WireFormat.readSignedVarLong(in);
+            MessageInfo msg = new MessageInfo();
+            msg.setId(id);
+            msg.setTimestamp(timestamp);
+            msg.readBody(in, names);
+            messages.add(msg);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package chat.info;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import chat.utils.WireFormat;
+
+// Resposta de um envio. Quando o servidor recusa por limite de taxa (do usuário ou
+// do grupo) ou por excesso de escritas pendentes, diz em quanto tempo vale tentar de novo.
+// PENDING: a espera pela gravação esgotou, mas a mensagem ainda pode ser gravada; reenviar
+// com o mesmo id de envio confirma sem duplicar.
+public final class SendResult implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        SENT, RATE_LIMITED, BUSY, FAILED, PENDING
+    }
+
+    private static final Status[] STATUSES = Status.values();
+
+    private Status status;
+    private long messageId;
+    private long retryAfterMillis;
+
+    // Usado só pela desserialização
+    public SendResult() {
+    }
+
+    private SendResult(Status status, long messageId, long retryAfterMillis) {
+        this.status = status;
+        this.messageId = messageId;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public static SendResult sent(long messageId) {
+        return new SendResult(Status.SENT, messageId, 0);
+    }
+
+    public static SendResult rateLimited(long retryAfterMillis) {
+        return new SendResult(Status.RATE_LIMITED, -1, retryAfterMillis);
+    }
+
+    public static SendResult busy(long retryAfterMillis) {
+        return new SendResult(Status.BUSY, -1, retryAfterMillis);
+    }
+
+    public static SendResult failed() {
+        return new SendResult(Status.FAILED, -1, 0);
+    }
+
+    public static SendResult pending() {
+        return new SendResult(Status.PENDING, -1, 0);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSent() {
+        return status == Status.SENT;
+    }
+
+    // Id da mensagem gravada; -1 se não foi enviada
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    // Texto para mostrar ao usuário
+    public String describe() {
+        String wait = retryAfterMillis < 1000 ? retryAfterMillis + " ms"
+                : String.format("%.1f s", retryAfterMillis / 1000.0);
+        return switch (status) {
+            case SENT -> "Mensagem enviada.";
+            case RATE_LIMITED -> "Muitas mensagens seguidas: tente de novo em " + wait + ".";
+            case BUSY -> "Servidor sobrecarregado: tente de novo em " + wait + ".";
+            case FAILED -> "Não foi possível enviar a mensagem.";
+            case PENDING -> "O servidor ainda está gravando a mensagem: envie de novo para confirmar "
+                    + "(ela não será duplicada).";
+        };
+    }
+
+    @Override
+    public String toString() {
+        return status + (isSent() ? " #" + messageId : " (retry " + retryAfterMillis + " ms)");
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(status.ordinal());
+        WireFormat.writeSignedVarLong(out, messageId);
+        WireFormat.writeVarLong(out, retryAfterMillis);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= STATUSES.length) {
+            throw new InvalidObjectException("Status de envio desconhecido: " + ordinal);
+        }
+        status = STATUSES[ordinal];
+        messageId = WireFormat.readSignedVarLong(in);
+        retryAfterMillis = WireFormat.readVarLong(in);
+    }
+}
@@ -0,0 +1,62 @@
+package chat.info;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import chat.utils.WireFormat;
+
+// Token opaco de uma sessão aberta no login: 256 bits aleatórios, sem nada do
+// usuário dentro. Quem o recebe só pode devolvê-lo ao servidor, que sabe a quem
+// pertence.
+public final class SessionToken implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    private static final int BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private byte[] value;
+
+    // Usado só pela desserialização
+    public SessionToken() {
+    }
+
+    private SessionToken(byte[] value) {
+        this.value = value;
+    }
+
+    public static SessionToken random() {
+        byte[] value = new byte[BYTES];
+        RANDOM.nextBytes(value);
+        return new SessionToken(value);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SessionToken token && Arrays.equals(value, token.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(value);
+    }
+
+    // Só o começo, para logs: o token inteiro nunca é impresso
+    @Override
+    public String toString() {
+        return value == null ? "SessionToken[]" : "SessionToken[" + HexFormat.of().formatHex(value, 0, 4) + "…]";
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        WireFormat.writeBytes(out, value);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        value = WireFormat.readBytes(in, BYTES);
+    }
+}
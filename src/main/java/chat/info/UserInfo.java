@@ -1,12 +1,23 @@
 package chat.info;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import chat.utils.WireFormat;
+
+public class UserInfo implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
-public class UserInfo implements Serializable {
     private String username;
     private String password;
     private String email;
 
+    // Usado só pela desserialização
+    public UserInfo() {
+    }
+
     public UserInfo(String username, String password, String email) {
         this.username = username;
         this.password = password;
@@ -37,4 +48,18 @@ public class UserInfo implements Serializable {
     public void setEmail(String email) {
         this.email = email;
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        WireFormat.writeString(out, username);
+        WireFormat.writeString(out, password);
+        WireFormat.writeString(out, email);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        username = WireFormat.readString(in);
+        password = WireFormat.readString(in);
+        email = WireFormat.readString(in);
+    }
 }
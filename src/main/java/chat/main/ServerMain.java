@@ -1,16 +1,22 @@
 package chat.main;
 
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-
 import chat.ChatServer;
+import chat.server.RmiTimeouts;
+import chat.server.StatsEndpoint;
+import chat.transport.ChatTransport;
+import chat.utils.Config;
 
 public class ServerMain {
     public static void main(String[] args) {
         try {
+            // Antes de qualquer uso de RMI: prazos curtos para falar com clientes que sumiram
+            RmiTimeouts.install(Config.getInt("whatsut.rmi.connectTimeoutMs", 2000),
+                    Config.getInt("whatsut.rmi.responseTimeoutMs", 5000));
+
             ChatServer server = new ChatServer();
-            Registry registry = LocateRegistry.createRegistry(1099);
-            registry.rebind("ChatService", server);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "whatsut-shutdown"));
+            ChatTransport.serve(server); // RMI ou NIO, conforme whatsut.transport
+            StatsEndpoint.start(Config.getInt("whatsut.metrics.port", 0)); // Relatório local, se configurado
 
             System.out.println("Server is running... Use Ctrl+C to stop.");
 
@@ -0,0 +1,123 @@
+package chat.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import chat.IChatClient;
+
+// Detecta clientes que caíram sem fazer logout: a cada intervalo chama ping() em
+// todas as sessões com callback registrado, em paralelo e com prazo. Depois de
+// maxFailures falhas seguidas a sessão é removida do PresenceRegistry (só se ainda
+// for a mesma época, para não derrubar um login novo do mesmo usuário).
+public class HeartbeatMonitor {
+
+    @FunctionalInterface
+    public interface EvictionListener {
+        void evicted(PresenceRegistry.Session session);
+    }
+
+    // Falhas seguidas da sessão de uma época
+    private static class Failures {
+        private final long epoch;
+        private int count;
+
+        Failures(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private final PresenceRegistry presence;
+    private final long intervalMillis;
+    private final long timeoutMillis;
+    private final int maxFailures;
+    private final EvictionListener listener;
+    private final Map<String, Failures> failures = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "whatsut-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService pings = ServerExecutor.newExecutor("whatsut-ping");
+
+    public HeartbeatMonitor(PresenceRegistry presence, long intervalMillis, long timeoutMillis, int maxFailures,
+            EvictionListener listener) {
+        this.presence = presence;
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.maxFailures = Math.max(1, maxFailures);
+        this.listener = listener;
+    }
+
+    public void start() {
+        // Atraso fixo: uma rodada só começa depois que a anterior terminou
+        scheduler.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pings.shutdownNow();
+    }
+
+    // Uma rodada: pinga todas as sessões em paralelo e espera todas responderem ou expirarem
+    void sweep() {
+        try {
+            List<Future<?>> checks = new ArrayList<>();
+            for (PresenceRegistry.Session session : presence.sessions()) {
+                if (session.getClient() != null) {
+                    checks.add(pings.submit(() -> check(session)));
+                }
+            }
+            for (Future<?> check : checks) {
+                check.get();
+            }
+            failures.keySet().removeIf(username -> !presence.isOnline(username));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            System.out.println("Erro na verificação de clientes: " + e.getMessage()); // Não pode matar o agendamento
+        }
+    }
+
+    private void check(PresenceRegistry.Session session) {
+        IChatClient client = session.getClient();
+        Future<?> ping = pings.submit(() -> {
+            client.ping();
+            return null;
+        });
+        try {
+            ping.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            failures.remove(session.getUsername());
+            return;
+        } catch (TimeoutException e) {
+            ping.cancel(true);
+        } catch (ExecutionException e) {
+            // Cliente inacessível (conexão recusada, stub inválido...)
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        Failures count = failures.compute(session.getUsername(), (username, current) -> {
+            Failures next = (current == null || current.epoch != session.getEpoch())
+                    ? new Failures(session.getEpoch())
+                    : current;
+            next.count++;
+            return next;
+        });
+        if (count.count >= maxFailures && presence.logout(session.getUsername(), session.getEpoch())) {
+            failures.remove(session.getUsername());
+            System.out.println("⚠️ " + session.getUsername() + " não responde há " + count.count
+                    + " verificações; sessão encerrada.");
+            listener.evicted(session);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package chat.server;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chat.IChatClient;
+
+// Entrega assíncrona dos callbacks RMI aos clientes. Cada destinatário tem sua
+// própria fila (a ordem das notificações de um cliente é mantida) e as filas são
+// esvaziadas em paralelo (threads virtuais, ou de plataforma conforme ServerExecutor),
+// com um limite de chamadas simultâneas. Uma chamada abandonada por prazo continua
+// ocupando sua vaga até de fato voltar, e enquanto isso a fila do destinatário espera
+// (nada é descartado); quando a chamada volta, a fila continua de onde parou.
+// Uma notificação que não chega ao cliente (falha, prazo, fila cheia ou sessão
+// encerrada) roda o seu plano B, se tiver um (ex.: a mensagem vai para a OfflineQueue).
+// Um cliente lento ou morto só atrasa a própria fila: a chamada que gerou a
+// notificação (ex.: envio de mensagem) volta assim que a mensagem está gravada.
+public class NotificationDispatcher {
+
+    // Uma chamada de callback num cliente
+    @FunctionalInterface
+    public interface Notification {
+        void deliver(IChatClient client) throws RemoteException;
+    }
+
+    private static class Pending {
+        private final IChatClient client;
+        private final Notification notification;
+        private final Runnable undelivered; // Roda se a notificação não chegar ao cliente (pode ser null)
+
+        Pending(IChatClient client, Notification notification, Runnable undelivered) {
+            this.client = client;
+            this.notification = notification;
+            this.undelivered = undelivered;
+        }
+    }
+
+    private static class Mailbox {
+        private final String username;
+        private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicInteger inFlight = new AtomicInteger(); // Chamadas que ainda não voltaram
+
+        Mailbox(String username) {
+            this.username = username;
+        }
+    }
+
+    private final ExecutorService executor = ServerExecutor.newExecutor("whatsut-notify");
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final long timeoutMillis;
+    private final int queueCapacity;
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public NotificationDispatcher(int maxConcurrent, long timeoutMillis, int queueCapacity) {
+        this.permits = new Semaphore(Math.max(1, maxConcurrent));
+        this.timeoutMillis = timeoutMillis;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    // Enfileira a notificação para username e retorna na hora. Sem cliente
+    // registrado não há o que entregar; com a fila cheia a notificação é descartada.
+    public void dispatch(String username, IChatClient client, Notification notification) {
+        dispatch(username, client, notification, null);
+    }
+
+    // Igual, mas se a notificação não chegar ao cliente (sem cliente, fila cheia, falha,
+    // prazo estourado ou sessão encerrada) roda undelivered no lugar de descartá-la.
+    // Uma chamada abandonada por prazo ainda pode chegar depois: o cliente recebe a
+    // notificação e o plano B, e tem que ignorar o que já viu (ex.: pelo id da mensagem)
+    public void dispatch(String username, IChatClient client, Notification notification, Runnable undelivered) {
+        Pending pending = new Pending(client, notification, undelivered);
+        if (client == null) {
+            undelivered(pending);
+            return;
+        }
+        Mailbox mailbox = mailboxes.computeIfAbsent(username, Mailbox::new);
+        if (mailbox.size.incrementAndGet() > queueCapacity) {
+            mailbox.size.decrementAndGet();
+            undelivered(pending);
+            return;
+        }
+        mailbox.queue.add(pending);
+        schedule(mailbox);
+    }
+
+    // Esquece o destinatário (ex.: sessão encerrada por falta de resposta) e o que estava na fila dele
+    public void discard(String username) {
+        Mailbox mailbox = mailboxes.remove(username);
+        if (mailbox != null) {
+            discardBacklog(mailbox);
+        }
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            pending += mailbox.size.get();
+        }
+        return pending;
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Só uma thread esvazia cada fila por vez, o que mantém a ordem por destinatário
+    private void schedule(Mailbox mailbox) {
+        if (mailbox.draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> drain(mailbox));
+            } catch (RuntimeException e) {
+                mailbox.draining.set(false); // Dispatcher encerrado
+            }
+        }
+    }
+
+    // Para enquanto houver chamada do destinatário em curso; quem a fez voltar agenda a fila de novo
+    private void drain(Mailbox mailbox) {
+        try {
+            Pending pending;
+            while (mailbox.inFlight.get() == 0 && (pending = mailbox.queue.poll()) != null) {
+                mailbox.size.decrementAndGet();
+                if (!deliver(mailbox, pending)) {
+                    undelivered(pending);
+                }
+            }
+        } finally {
+            mailbox.draining.set(false);
+        }
+        // Algo pode ter chegado entre o último poll e a liberação da fila
+        if (!mailbox.queue.isEmpty()) {
+            schedule(mailbox);
+        }
+    }
+
+    // Faz a chamada com prazo; uma chamada RMI não pode ser abortada de fora, então
+    // ao estourar o prazo ela é abandonada e a thread da fila fica livre. A vaga só é
+    // devolvida quando a chamada termina, então clientes travados não multiplicam as
+    // chamadas em curso: enquanto a anterior não volta, a fila do destinatário espera
+    private boolean deliver(Mailbox mailbox, Pending pending) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        mailbox.inFlight.incrementAndGet();
+        AtomicBoolean started = new AtomicBoolean(); // Quem marcar primeiro (a chamada ou o prazo) devolve a vaga
+        Future<?> call;
+        try {
+            call = executor.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null; // Prazo estourou antes de a chamada começar
+                }
+                try {
+                    pending.notification.deliver(pending.client);
+                    return null;
+                } finally {
+                    mailbox.inFlight.decrementAndGet();
+                    permits.release();
+                    schedule(mailbox); // Retoma a fila se ela parou esperando por esta chamada
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mailbox.inFlight.decrementAndGet();
+            permits.release();
+            return false; // Dispatcher encerrado
+        }
+        try {
+            call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            delivered.incrementAndGet();
+            return true;
+        } catch (TimeoutException e) {
+            if (started.compareAndSet(false, true)) {
+                mailbox.inFlight.decrementAndGet(); // Nem chegou a rodar
+                permits.release();
+            }
+            call.cancel(true);
+            System.out.println("⚠️ Cliente " + mailbox.username + " não respondeu à notificação em "
+                    + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            System.out.println("⚠️ Falha ao notificar " + mailbox.username + ": " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failed.incrementAndGet();
+        return false;
+    }
+
+    // Sessão encerrada: o que estava na fila não será entregue a este cliente
+    private void discardBacklog(Mailbox mailbox) {
+        Pending pending;
+        while ((pending = mailbox.queue.poll()) != null) {
+            mailbox.size.decrementAndGet();
+            undelivered(pending);
+        }
+    }
+
+    // Sem plano B a notificação se perde (ao voltar, o cliente busca as novidades pelo
+    // delta do histórico)
+    private void undelivered(Pending pending) {
+        if (pending.undelivered == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            pending.undelivered.run();
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Falha ao tratar notificação não entregue: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package chat.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import chat.IChatClient;
+import chat.database.DatabaseManager;
+import chat.info.MessageInfo;
+
+// Fila de entregas pendentes: mensagens privadas que chegaram com o destinatário
+// offline. A tabela pending_deliveries é a fonte da verdade; em memória fica só
+// uma cópia limitada dos ids de cada usuário, que evita ir ao banco no login de
+// quem não tem nada pendente. Quando o usuário volta, o que ele perdeu é enviado
+// em lotes, e as linhas só são apagadas depois que o cliente recebeu o lote.
+public class OfflineQueue {
+    private static final long IN_FLIGHT_TIMEOUT_MILLIS = 60_000;
+
+    // Ids pendentes de um usuário; overflowed indica que o banco tem mais que a memória
+    private static class Pending {
+        private final Deque<Long> ids = new ArrayDeque<>();
+        private boolean overflowed = false;
+    }
+
+    private final DatabaseManager dbManager;
+    private final NotificationDispatcher notifier;
+    private final int memoryCap;
+    private final int batchSize;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, Long> inFlight = new ConcurrentHashMap<>(); // username -> prazo do lote enviado
+
+    public OfflineQueue(DatabaseManager dbManager, NotificationDispatcher notifier, int memoryCap, int batchSize) {
+        this.dbManager = dbManager;
+        this.notifier = notifier;
+        this.memoryCap = Math.max(1, memoryCap);
+        this.batchSize = Math.max(1, batchSize);
+
+        // O que ficou pendente antes de o servidor reiniciar
+        for (String username : dbManager.getUsersWithPendingDeliveries()) {
+            reload(username);
+        }
+    }
+
+    // Registra que messageId ainda não foi visto por username
+    public void enqueue(String username, long messageId) {
+        dbManager.addPendingDelivery(username, messageId);
+        pending.compute(username, (user, entry) -> {
+            if (entry == null) {
+                entry = new Pending();
+            }
+            entry.ids.addLast(messageId);
+            if (entry.ids.size() > memoryCap) {
+                entry.ids.removeFirst(); // Continua no banco; a memória guarda no máximo memoryCap ids
+                entry.overflowed = true;
+            }
+            return entry;
+        });
+    }
+
+    public boolean hasPending(String username) {
+        return pending.containsKey(username);
+    }
+
+    public int getPendingUsers() {
+        return pending.size();
+    }
+
+    // Envia ao cliente o lote mais antigo do que ele perdeu. Só um lote por usuário
+    // fica em trânsito, então login seguido de registerClient não duplica a entrega.
+    public void deliver(String username, IChatClient client) {
+        if (client == null || !pending.containsKey(username) || !claim(username)) {
+            return;
+        }
+
+        List<MessageInfo> batch = dbManager.getPendingMessages(username, batchSize);
+        if (batch.isEmpty()) {
+            // Só restaram referências a mensagens que foram apagadas
+            acknowledge(username, Long.MAX_VALUE);
+            inFlight.remove(username);
+            return;
+        }
+
+        long upToId = batch.get(batch.size() - 1).getId();
+        notifier.dispatch(username, client, target -> {
+            try {
+                target.deliverPending(batch);
+                acknowledge(username, upToId);
+            } finally {
+                inFlight.remove(username);
+            }
+            deliver(username, target); // Próximo lote, se ainda houver
+        }, () -> inFlight.remove(username)); // Não chegou: o lote continua no banco para o próximo login
+    }
+
+    private boolean claim(String username) {
+        long now = System.currentTimeMillis();
+        Long previous = inFlight.get(username);
+        if (previous != null && previous > now) {
+            return false;
+        }
+        long deadline = now + IN_FLIGHT_TIMEOUT_MILLIS;
+        // Um lote cuja entrega nunca terminou (ex.: descartado pelo dispatcher) expira
+        return previous == null ? inFlight.putIfAbsent(username, deadline) == null
+                : inFlight.replace(username, previous, deadline);
+    }
+
+    private void acknowledge(String username, long upToId) {
+        dbManager.removePendingDeliveries(username, upToId);
+        Pending left = pending.computeIfPresent(username, (user, entry) -> {
+            entry.ids.removeIf(id -> id <= upToId);
+            if (entry.ids.isEmpty()) {
+                return entry.overflowed ? entry : null;
+            }
+            return entry;
+        });
+        if (left != null && left.ids.isEmpty()) {
+            reload(username); // A memória esvaziou, mas o banco tinha mais do que ela guardava
+        }
+    }
+
+    private void reload(String username) {
+        List<Long> ids = dbManager.getPendingDeliveryIds(username, memoryCap + 1);
+        pending.compute(username, (user, entry) -> {
+            Pending loaded = new Pending();
+            loaded.overflowed = ids.size() > memoryCap;
+            loaded.ids.addAll(loaded.overflowed ? ids.subList(0, memoryCap) : ids);
+            // Preserva o que foi enfileirado enquanto o banco era lido
+            long lastLoaded = loaded.ids.isEmpty() ? 0 : loaded.ids.getLast();
+            if (entry != null) {
+                for (long id : entry.ids) {
+                    if (id > lastLoaded) {
+                        loaded.ids.addLast(id);
+                    }
+                }
+            }
+            return loaded.ids.isEmpty() ? null : loaded;
+        });
+    }
+}
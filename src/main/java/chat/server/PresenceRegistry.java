@@ -0,0 +1,173 @@
+package chat.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import chat.IChatClient;
+
+// Quem está online e por qual callback falar com cada um. As alterações de um
+// usuário (login, logout, registro do callback) são serializadas por um lock
+// escolhido pelo nome (lock striping), então usuários diferentes não disputam o
+// mesmo lock. Cada login abre uma sessão com uma época nova: operações que
+// carregam a época de uma sessão antiga não afetam a sessão atual.
+// A lista de online é um snapshot imutável, lido sem lock e refeito no máximo
+// uma vez por alteração.
+public class PresenceRegistry {
+    private static final int STRIPES = 64;
+
+    // Sessão imutável; mudanças criam uma nova instância
+    public static final class Session {
+        private final String username;
+        private final IChatClient client; // null enquanto o callback não foi registrado
+        private final long epoch;
+        private final long since;
+
+        Session(String username, IChatClient client, long epoch, long since) {
+            this.username = username;
+            this.client = client;
+            this.epoch = epoch;
+            this.since = since;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public IChatClient getClient() {
+            return client;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public long getSince() {
+            return since;
+        }
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final List<String> users;
+
+        Snapshot(long version, List<String> users) {
+            this.version = version;
+            this.users = users;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+    private final AtomicLong epochs = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0, List.of()));
+
+    public PresenceRegistry() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Abre uma sessão nova (substituindo a anterior, se houver) e devolve sua época
+    public long login(String username, IChatClient client) {
+        synchronized (lockFor(username)) {
+            long epoch = epochs.incrementAndGet();
+            sessions.put(username, new Session(username, client, epoch, System.currentTimeMillis()));
+            version.incrementAndGet();
+            return epoch;
+        }
+    }
+
+    // Registra o callback da sessão atual; sem sessão aberta, abre uma
+    public void attach(String username, IChatClient client) {
+        synchronized (lockFor(username)) {
+            Session current = sessions.get(username);
+            if (current == null) {
+                sessions.put(username, new Session(username, client, epochs.incrementAndGet(),
+                        System.currentTimeMillis()));
+                version.incrementAndGet();
+            } else {
+                sessions.put(username, new Session(username, client, current.epoch, current.since));
+            }
+        }
+    }
+
+    // Remove o callback, mantendo o usuário online
+    public void detach(String username) {
+        synchronized (lockFor(username)) {
+            Session current = sessions.get(username);
+            if (current != null && current.client != null) {
+                sessions.put(username, new Session(username, null, current.epoch, current.since));
+            }
+        }
+    }
+
+    public Session logout(String username) {
+        synchronized (lockFor(username)) {
+            Session removed = sessions.remove(username);
+            if (removed != null) {
+                version.incrementAndGet();
+            }
+            return removed;
+        }
+    }
+
+    // Encerra a sessão só se ela ainda for a da época informada (um login mais
+    // novo do mesmo usuário não é derrubado por quem viu a sessão antiga)
+    public boolean logout(String username, long epoch) {
+        synchronized (lockFor(username)) {
+            Session current = sessions.get(username);
+            if (current == null || current.epoch != epoch) {
+                return false;
+            }
+            sessions.remove(username);
+            version.incrementAndGet();
+            return true;
+        }
+    }
+
+    public Session get(String username) {
+        return sessions.get(username);
+    }
+
+    public IChatClient client(String username) {
+        Session session = sessions.get(username);
+        return session != null ? session.client : null;
+    }
+
+    public boolean isOnline(String username) {
+        return sessions.containsKey(username);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public List<Session> sessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    // Lista imutável dos usuários online. Quem altera o registro só incrementa a
+    // versão; o snapshot é refeito pelo primeiro leitor que encontrar uma versão nova.
+    public List<String> listOnline() {
+        Snapshot current = snapshot.get();
+        long latest = version.get();
+        if (current.version == latest) {
+            return current.users;
+        }
+        List<String> users = new ArrayList<>(sessions.keySet());
+        Collections.sort(users);
+        Snapshot rebuilt = new Snapshot(latest, Collections.unmodifiableList(users));
+        snapshot.compareAndSet(current, rebuilt); // Se outro leitor já publicou, tanto faz qual fica
+        return rebuilt.users;
+    }
+
+    private Object lockFor(String username) {
+        return locks[(username.hashCode() & 0x7fffffff) % STRIPES];
+    }
+}
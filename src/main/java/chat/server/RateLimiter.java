@@ -0,0 +1,136 @@
+package chat.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Balde de fichas por chave (usuário ou grupo), sem lock. Cada balde guarda só o
+// instante em que ele voltaria a estar cheio (GCRA, equivalente ao token bucket):
+// uma ficha é um compareAndSet nesse instante. Taxa e rajada podem ser trocadas
+// com o servidor rodando; perSecond = 0 desliga o limite.
+public class RateLimiter {
+    private static final int SWEEP_THRESHOLD = 4096; // Baldes em memória antes de descartar os cheios
+
+    // Taxa e rajada; imutável, trocada inteira por setLimits
+    private static final class Limits {
+        private final int perSecond;
+        private final int burst;
+        private final long intervalNanos; // Tempo para repor uma ficha
+        private final long toleranceNanos; // Quanto o balde pode adiantar (burst - 1 fichas)
+
+        Limits(int perSecond, int burst) {
+            this.perSecond = Math.max(0, perSecond);
+            this.burst = Math.max(1, burst);
+            this.intervalNanos = this.perSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / this.perSecond;
+            this.toleranceNanos = intervalNanos * (this.burst - 1);
+        }
+    }
+
+    private final String name;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>(); // chave -> instante em que enche
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final LongAdder rejected = new LongAdder();
+    private volatile Limits limits;
+
+    public RateLimiter(String name, int perSecond, int burst) {
+        this.name = name;
+        this.limits = new Limits(perSecond, burst);
+    }
+
+    // Vale para as próximas chamadas; os baldes existentes continuam de onde estavam
+    public void setLimits(int perSecond, int burst) {
+        limits = new Limits(perSecond, burst);
+        System.out.println("✅ Limite " + name + ": " + (perSecond <= 0 ? "desligado"
+                : perSecond + "/s, rajada de " + Math.max(1, burst)));
+    }
+
+    // 0 se a chamada pode seguir (a ficha já foi consumida); senão, em quantos ms tentar de novo
+    public long acquire(String key) {
+        Limits current = limits;
+        if (current.intervalNanos == 0) {
+            return 0;
+        }
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+            sweepIfLarge();
+        }
+        while (true) {
+            long now = System.nanoTime();
+            long full = bucket.get();
+            long start = full - now > 0 ? full : now;
+            long wait = start - now - current.toleranceNanos;
+            if (wait > 0) {
+                rejected.increment();
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + 999_999));
+            }
+            if (bucket.compareAndSet(full, start + current.intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    // Como acquire, mas sem consumir a ficha; uma espera devolvida conta como recusa
+    public long peek(String key) {
+        Limits current = limits;
+        AtomicLong bucket = buckets.get(key);
+        if (current.intervalNanos == 0 || bucket == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long full = bucket.get();
+        long wait = (full - now > 0 ? full : now) - now - current.toleranceNanos;
+        if (wait > 0) {
+            rejected.increment();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + 999_999));
+        }
+        return 0;
+    }
+
+    // Devolve uma ficha tirada por acquire cuja chamada acabou recusada por outro motivo
+    public void refund(String key) {
+        Limits current = limits;
+        AtomicLong bucket = buckets.get(key);
+        if (current.intervalNanos != 0 && bucket != null) {
+            bucket.addAndGet(-current.intervalNanos);
+        }
+    }
+
+    // Esquece o balde (logout, grupo excluído)
+    public void forget(String key) {
+        buckets.remove(key);
+    }
+
+    public int getPerSecond() {
+        return limits.perSecond;
+    }
+
+    public int getBurst() {
+        return limits.burst;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    // Com muitas chaves, descarta os baldes já cheios (que valem o mesmo que um novo).
+    // Uma ficha tirada ao mesmo tempo de um balde descartado se perde a favor do cliente.
+    private void sweepIfLarge() {
+        if (buckets.size() <= SWEEP_THRESHOLD || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
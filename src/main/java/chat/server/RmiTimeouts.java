@@ -0,0 +1,35 @@
+package chat.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMISocketFactory;
+
+// Prazos das chamadas RMI que o servidor faz aos clientes (callbacks e ping).
+// Sem isso, um cliente que sumiu da rede segura a chamada pelo tempo padrão do
+// sistema operacional (dezenas de segundos). Precisa ser instalado antes de
+// qualquer uso de RMI, porque o prazo de resposta é lido uma única vez.
+public class RmiTimeouts {
+
+    public static void install(int connectTimeoutMillis, int responseTimeoutMillis) throws IOException {
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(responseTimeoutMillis));
+        }
+
+        // A fábrica padrão conecta sem prazo; esta aplica o prazo de conexão
+        RMISocketFactory.setSocketFactory(new RMISocketFactory() {
+            @Override
+            public Socket createSocket(String host, int port) throws IOException {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+                return socket;
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port) throws IOException {
+                return new ServerSocket(port);
+            }
+        });
+    }
+}
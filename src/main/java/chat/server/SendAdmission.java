@@ -0,0 +1,89 @@
+package chat.server;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import chat.info.SendResult;
+import chat.utils.Config;
+
+// Decide se um envio (mensagem, arquivo ou upload) entra, antes de qualquer acesso
+// ao banco: primeiro a fila do escritor do SQLite (se está cheia, recusa para todos
+// e a chamada volta na hora em vez de ficar presa esperando vaga), depois o balde do
+// grupo e o do remetente; uma ficha só é gasta quando os dois aceitam. Tudo pode ser
+// ajustado com o servidor rodando.
+public class SendAdmission {
+    private final RateLimiter users;
+    private final RateLimiter groups;
+    private final IntSupplier writeDepth; // Escritas em andamento ou esperando o escritor
+    private final LongAdder busy = new LongAdder();
+    private volatile int maxQueuedWrites; // 0 = sem controle global
+    private final long busyRetryMillis;
+
+    public SendAdmission(RateLimiter users, RateLimiter groups, IntSupplier writeDepth, int maxQueuedWrites,
+            long busyRetryMillis) {
+        this.users = users;
+        this.groups = groups;
+        this.writeDepth = writeDepth;
+        this.maxQueuedWrites = Math.max(0, maxQueuedWrites);
+        this.busyRetryMillis = Math.max(1, busyRetryMillis);
+    }
+
+    // Padrão do controle global: 3/4 das vagas de escrita, para recusar antes de
+    // alguém precisar esperar por uma vaga
+    public static SendAdmission fromConfig(IntSupplier writeDepth) {
+        int writeSlots = Config.getInt("whatsut.db.write.maxWaiting", 256);
+        return new SendAdmission(
+                new RateLimiter("por usuário", Config.getInt("whatsut.limit.user.perSecond", 20),
+                        Config.getInt("whatsut.limit.user.burst", 40)),
+                new RateLimiter("por grupo", Config.getInt("whatsut.limit.group.perSecond", 50),
+                        Config.getInt("whatsut.limit.group.burst", 100)),
+                writeDepth,
+                Config.getInt("whatsut.limit.maxQueuedWrites", Math.max(1, writeSlots * 3 / 4)),
+                Config.getLong("whatsut.limit.busyRetryMs", 250));
+    }
+
+    // null se o envio pode seguir; senão o resultado a devolver (groupName null para privado).
+    // sender deve vir do token da sessão, nunca de um nome informado pelo cliente
+    public SendResult admit(String sender, String groupName) {
+        int max = maxQueuedWrites;
+        if (max > 0 && writeDepth.getAsInt() >= max) {
+            busy.increment();
+            return SendResult.busy(busyRetryMillis);
+        }
+        // O remetente só é cobrado se o grupo também aceitar
+        long retry = groupName != null ? groups.peek(groupName) : 0;
+        if (retry == 0) {
+            retry = users.acquire(sender);
+        }
+        if (retry == 0 && groupName != null) {
+            retry = groups.acquire(groupName);
+            if (retry != 0) {
+                users.refund(sender); // Outro envio levou a última ficha do grupo entre peek e acquire
+            }
+        }
+        return retry == 0 ? null : SendResult.rateLimited(retry);
+    }
+
+    public RateLimiter getUserLimiter() {
+        return users;
+    }
+
+    public RateLimiter getGroupLimiter() {
+        return groups;
+    }
+
+    public void setMaxQueuedWrites(int maxQueuedWrites) {
+        this.maxQueuedWrites = Math.max(0, maxQueuedWrites);
+        System.out.println("✅ Escritas pendentes antes de recusar envios: "
+                + (maxQueuedWrites <= 0 ? "sem limite" : maxQueuedWrites));
+    }
+
+    public int getMaxQueuedWrites() {
+        return maxQueuedWrites;
+    }
+
+    // Envios recusados porque a fila do escritor estava cheia
+    public long getBusyCount() {
+        return busy.sum();
+    }
+}
@@ -0,0 +1,38 @@
+package chat.server;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import chat.utils.Config;
+
+// Onde roda o trabalho bloqueante do servidor que não está nas threads do RMI:
+// entrega de callbacks, ping dos clientes e as chamadas do transporte NIO (que
+// fazem o acesso ao SQLite). whatsut.server.threads escolhe entre threads virtuais
+// (padrão) e threads de plataforma, uma por tarefa como no RMI, para comparar os
+// dois modos sob carga.
+public class ServerExecutor {
+
+    public enum Mode {
+        VIRTUAL, PLATFORM
+    }
+
+    public static Mode mode() {
+        String value = Config.getString("whatsut.server.threads", "virtual");
+        try {
+            return Mode.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("⚠️ Valor inválido para whatsut.server.threads: " + value + " (usando virtual)");
+            return Mode.VIRTUAL;
+        }
+    }
+
+    // Uma thread por tarefa, com nomes prefix-0, prefix-1...
+    public static ExecutorService newExecutor(String prefix) {
+        if (mode() == Mode.PLATFORM) {
+            // Cached: tarefas que esperam por outras do mesmo executor nunca ficam sem thread
+            return Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name(prefix + "-", 0).factory());
+        }
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix + "-", 0).factory());
+    }
+}
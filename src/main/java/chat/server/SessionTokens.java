@@ -0,0 +1,98 @@
+package chat.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import chat.info.SessionToken;
+
+// Sessões autenticadas: o login troca usuário e senha por um SessionToken ligado a
+// um Principal em memória (nome, admin e a época da sessão no PresenceRegistry).
+// As chamadas que recebem o token descobrem quem chamou e se é admin com uma
+// consulta ao mapa, sem ir ao banco. Cada usuário tem no máximo um token válido:
+// um login novo invalida o anterior, e logout, queda detectada pelo heartbeat e
+// exclusão do usuário o revogam.
+public class SessionTokens {
+
+    // Quem é o dono de um token; imutável
+    public static final class Principal {
+        private final String username;
+        private final boolean admin;
+        private final long epoch;
+        private final long since;
+
+        Principal(String username, boolean admin, long epoch, long since) {
+            this.username = username;
+            this.admin = admin;
+            this.epoch = epoch;
+            this.since = since;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        // Lido do banco no login; vale até o fim da sessão
+        public boolean isAdmin() {
+            return admin;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public long getSince() {
+            return since;
+        }
+    }
+
+    private final Map<SessionToken, Principal> principals = new ConcurrentHashMap<>();
+    private final Map<String, SessionToken> tokens = new ConcurrentHashMap<>(); // username -> token atual
+
+    // Novo token para a sessão da época informada, invalidando o anterior do usuário
+    public SessionToken issue(String username, boolean admin, long epoch) {
+        SessionToken token = SessionToken.random();
+        Principal principal = new Principal(username, admin, epoch, System.currentTimeMillis());
+        // compute serializa issue e revoke do mesmo usuário
+        tokens.compute(username, (name, previous) -> {
+            if (previous != null) {
+                principals.remove(previous);
+            }
+            principals.put(token, principal);
+            return token;
+        });
+        return token;
+    }
+
+    // Dono do token; null se ele não existe ou já foi revogado
+    public Principal principal(SessionToken token) {
+        return token == null ? null : principals.get(token);
+    }
+
+    // Principal da sessão atual do usuário; null se não houver
+    public Principal principal(String username) {
+        return principal(tokens.get(username));
+    }
+
+    public void revoke(String username) {
+        tokens.computeIfPresent(username, (name, token) -> {
+            principals.remove(token);
+            return null;
+        });
+    }
+
+    // Revoga só se o token atual ainda for da sessão da época informada
+    public void revoke(String username, long epoch) {
+        tokens.computeIfPresent(username, (name, token) -> {
+            Principal current = principals.get(token);
+            if (current != null && current.epoch != epoch) {
+                return token; // Já é de um login mais novo
+            }
+            principals.remove(token);
+            return null;
+        });
+    }
+
+    public int size() {
+        return principals.size();
+    }
+}
@@ -0,0 +1,41 @@
+package chat.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+import chat.utils.Metrics;
+
+// Relatório de Metrics em texto puro por HTTP, só na interface local
+// (curl http://127.0.0.1:<porta>/stats). Desligado com porta 0, o padrão.
+public class StatsEndpoint {
+
+    // Devolve o servidor iniciado, ou null se a porta for 0 ou não puder ser aberta
+    public static HttpServer start(int port) {
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            http.createContext("/stats", exchange -> {
+                byte[] body = Metrics.report().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            http.start();
+            System.out.println("✅ Estatísticas em http://127.0.0.1:" + http.getAddress().getPort() + "/stats");
+            return http;
+        } catch (IOException e) {
+            System.out.println("⚠️ Não foi possível abrir o endpoint de estatísticas na porta " + port + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package chat.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import chat.database.DatabaseManager;
+import chat.info.MessageInfo;
+
+// Contadores de mensagens privadas não lidas por (usuário, remetente). Os cursores
+// de leitura ficam no banco (read_cursors); em memória ficam só os contadores dos
+// usuários que pediram o resumo desde o login, carregados com uma consulta e depois
+// mantidos a cada mensagem gravada. Cada contador guarda até que id a contagem do
+// banco já enxergou, então uma mensagem nunca é contada duas vezes.
+public class UnreadCounters {
+
+    private static class Conversation {
+        private int unread;
+        private final long countedUpTo; // Mensagens com id até aqui já estão em unread
+
+        Conversation(int unread, long countedUpTo) {
+            this.unread = unread;
+            this.countedUpTo = countedUpTo;
+        }
+    }
+
+    private static class Counts {
+        private final long loadedUpTo; // Vale para remetentes que ainda não têm Conversation
+        private final Map<String, Conversation> conversations = new HashMap<>();
+
+        Counts(long loadedUpTo) {
+            this.loadedUpTo = loadedUpTo;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    // As alterações de um usuário passam pelos compute do mapa, que as serializam
+    private final Map<String, Counts> users = new ConcurrentHashMap<>();
+
+    public UnreadCounters(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    // Remetente -> não lidas, só das conversas com alguma não lida
+    public Map<String, Integer> summary(String username) {
+        Map<String, Integer> summary = new HashMap<>();
+        users.compute(username, (user, counts) -> {
+            Counts current = counts != null ? counts : load(user);
+            if (current != null) {
+                current.conversations.forEach((peer, conversation) -> {
+                    if (conversation.unread > 0) {
+                        summary.put(peer, conversation.unread);
+                    }
+                });
+            }
+            return current;
+        });
+        return summary;
+    }
+
+    // Chamado depois que a mensagem foi gravada; quem não está carregado verá a
+    // mensagem na contagem do banco quando pedir o resumo
+    public void messageStored(MessageInfo msg) {
+        users.computeIfPresent(msg.getRecipient(), (user, counts) -> {
+            Conversation conversation = counts.conversations.get(msg.getSender());
+            long countedUpTo = conversation != null ? conversation.countedUpTo : counts.loadedUpTo;
+            if (msg.getId() > countedUpTo) {
+                if (conversation == null) {
+                    conversation = new Conversation(0, counts.loadedUpTo);
+                    counts.conversations.put(msg.getSender(), conversation);
+                }
+                conversation.unread++;
+            }
+            return counts;
+        });
+    }
+
+    public boolean markRead(String username, String peer, long upToId) {
+        if (!dbManager.markRead(username, peer, upToId)) {
+            return false;
+        }
+        // O que chegou depois de upToId continua não lido: reconta só esta conversa
+        users.computeIfPresent(username, (user, counts) -> {
+            DatabaseManager.UnreadSnapshot snapshot = dbManager.countUnreadFrom(user, peer);
+            if (snapshot == null) {
+                return null; // Sem como corrigir; recarrega tudo no próximo resumo
+            }
+            counts.conversations.put(peer, new Conversation(snapshot.getCounts().get(peer), snapshot.getUpToId()));
+            return counts;
+        });
+        return true;
+    }
+
+    // Libera os contadores de quem saiu; são recarregados do banco no próximo resumo
+    public void forget(String username) {
+        users.remove(username);
+    }
+
+    // Usuário excluído: some também das conversas dos outros
+    public void forgetPeer(String peer) {
+        users.remove(peer);
+        for (String username : users.keySet()) {
+            users.computeIfPresent(username, (user, counts) -> {
+                counts.conversations.remove(peer);
+                return counts;
+            });
+        }
+    }
+
+    private Counts load(String username) {
+        DatabaseManager.UnreadSnapshot snapshot = dbManager.getUnreadCounts(username);
+        if (snapshot == null) {
+            return null;
+        }
+        Counts counts = new Counts(snapshot.getUpToId());
+        snapshot.getCounts().forEach((peer, unread) -> counts.conversations.put(peer,
+                new Conversation(unread, snapshot.getUpToId())));
+        return counts;
+    }
+}
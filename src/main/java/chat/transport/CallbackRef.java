@@ -0,0 +1,8 @@
+package chat.transport;
+
+// Vai no lugar do IChatClient passado ao servidor (login, registerClient): o
+// callback de um cliente NIO é a própria conexão, então o servidor troca esta
+// marca por um proxy que chama o cliente por ela
+enum CallbackRef {
+    INSTANCE
+}
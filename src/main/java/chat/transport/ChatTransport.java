@@ -0,0 +1,83 @@
+package chat.transport;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+import chat.ChatServer;
+import chat.IChatClient;
+import chat.IChatServer;
+import chat.utils.CompressedRmiSockets;
+import chat.utils.Config;
+import chat.utils.Metrics;
+
+// Escolha do transporte entre cliente e servidor (whatsut.transport):
+// - "rmi" (padrão): registro RMI na porta 1099 e callbacks exportados pelo
+//   cliente, que o servidor chama abrindo conexões de volta;
+// - "nio": uma conexão TCP por cliente, aberta pelo cliente, por onde também
+//   chegam as notificações do servidor (atravessa NAT).
+// Nos dois casos o resto do código só vê IChatServer e IChatClient.
+public class ChatTransport {
+    public static final String RMI = "rmi";
+    public static final String NIO = "nio";
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static Registry registry; // Referência mantida para o registro não ser coletado
+    private static IChatServer published; // Proxy exportado no RMI, mantido pelo mesmo motivo
+
+    public static boolean isNio() {
+        return NIO.equalsIgnoreCase(Config.getString("whatsut.transport", RMI));
+    }
+
+    // Cliente: conecta ao servidor configurado (whatsut.server.host)
+    public static IChatServer connect() throws Exception {
+        String host = Config.getString("whatsut.server.host", "localhost");
+        if (isNio()) {
+            return NioChatClient.connect(host, Config.getInt("whatsut.nio.port", 1100), CONNECT_TIMEOUT_MILLIS,
+                    maxFrameBytes(), callTimeoutMillis(), maxRequestsPerConnection());
+        }
+        return (IChatServer) LocateRegistry.getRegistry(host, 1099).lookup("ChatService");
+    }
+
+    // Cliente: deixa o callback pronto para receber chamadas do servidor. No NIO
+    // não há o que exportar: ele é ligado à conexão quando é passado no login.
+    public static void exportCallback(IChatClient client) throws RemoteException {
+        if (!isNio()) {
+            CompressedRmiSockets sockets = CompressedRmiSockets.fromConfig();
+            UnicastRemoteObject.exportObject(client, 0, sockets, sockets);
+        }
+    }
+
+    // Servidor: publica o ChatServer pelo transporte configurado. O que os clientes
+    // chamam é um proxy que mede a latência de cada método (Metrics, "rpc ...").
+    public static void serve(ChatServer server) throws Exception {
+        IChatServer timed = Metrics.timed(IChatServer.class, server, "rpc");
+        if (isNio()) {
+            NioChatServer nio = new NioChatServer(timed, maxFrameBytes(), callTimeoutMillis(),
+                    maxRequestsPerConnection());
+            nio.start(Config.getString("whatsut.nio.host", "0.0.0.0"), Config.getInt("whatsut.nio.port", 1100));
+            Metrics.gauge("nio.connections", nio::getConnectionCount);
+            Runtime.getRuntime().addShutdownHook(new Thread(nio::stop, "whatsut-nio-shutdown"));
+        } else {
+            // Única exportação do servidor: com as fábricas de compressão (ou as padrão, se
+            // desligada), que os clientes recebem junto com o stub
+            CompressedRmiSockets sockets = CompressedRmiSockets.fromConfig();
+            published = timed;
+            registry = LocateRegistry.createRegistry(1099);
+            registry.rebind("ChatService", UnicastRemoteObject.exportObject(timed, 0, sockets, sockets));
+        }
+    }
+
+    private static int maxFrameBytes() {
+        return Config.getInt("whatsut.nio.maxFrameBytes", 4 * 1024 * 1024);
+    }
+
+    private static int maxRequestsPerConnection() {
+        return Config.getInt("whatsut.nio.maxRequestsPerConnection", 64);
+    }
+
+    private static long callTimeoutMillis() {
+        return Config.getLong("whatsut.nio.callTimeoutMs", 60_000);
+    }
+}
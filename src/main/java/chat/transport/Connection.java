@@ -0,0 +1,329 @@
+package chat.transport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import chat.info.FileInfo;
+
+// Uma conexão TCP do transporte NIO, usada nos dois sentidos: cada lado chama
+// métodos do outro (pedido e resposta casados por id, várias chamadas em
+// andamento ao mesmo tempo) e atende as chamadas que chegam, cada uma numa
+// thread do executor recebido. É assim que o servidor empurra notificações ao
+// cliente pela conexão que o próprio cliente abriu, sem conexões de volta como no RMI.
+//
+// Quadro: tamanho (int, sem contar ele mesmo), tipo (byte), id (long) e o
+// conteúdo serializado (nome do método e argumentos, resultado ou exceção).
+class Connection {
+    private static final byte REQUEST = 0;
+    private static final byte RESPONSE = 1;
+    private static final byte ERROR = 2;
+    private static final int HEADER_BYTES = 13;
+
+    // Só as classes do chat e do JDK (argumentos, resultados e exceções) são aceitas, com
+    // limites de profundidade, referências e arrays: o maior array legítimo é uma parte de
+    // upload ou download. O total de bytes é limitado por conexão (maxFrameBytes).
+    private static final String FILTER_PATTERN = "maxdepth=20;maxrefs=100000;maxarray=" + FileInfo.MAX_CHUNK_SIZE
+            + ";chat.**;java.**;!*";
+    private static final Map<Class<?>, Map<String, Method>> METHODS = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface Payload {
+        void write(ObjectOutputStream out) throws IOException;
+    }
+
+    private final SocketChannel channel;
+    private final String name;
+    private final int maxFrameBytes;
+    private final long callTimeoutMillis;
+    private final Executor threads; // Leitura da conexão e atendimento das chamadas recebidas
+    private final Semaphore requests; // Vagas para chamadas recebidas em atendimento
+    private final ObjectInputFilter filter;
+    private final ReentrantLock writeLock = new ReentrantLock(); // Lock: a escrita não prende a thread virtual
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+    private volatile Object target; // Quem atende as chamadas que chegam (null: nenhuma é aceita)
+    private volatile Class<?> targetType;
+    private volatile UnaryOperator<Object> incoming = UnaryOperator.identity();
+    private volatile Runnable onClose = () -> {
+    };
+    private volatile boolean closed;
+
+    Connection(SocketChannel channel, String name, int maxFrameBytes, long callTimeoutMillis, int maxRequests,
+            Executor threads) {
+        this.channel = channel;
+        this.name = name;
+        this.maxFrameBytes = maxFrameBytes;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.threads = threads;
+        this.requests = new Semaphore(Math.max(1, maxRequests));
+        this.filter = ObjectInputFilter.Config.createFilter("maxbytes=" + maxFrameBytes + ";" + FILTER_PATTERN);
+    }
+
+    // Chamadas recebidas vão para target; incoming troca argumentos recebidos (ex.: a referência ao callback)
+    void serve(Object target, Class<?> type, UnaryOperator<Object> incoming) {
+        this.incoming = incoming;
+        this.targetType = type;
+        this.target = target;
+    }
+
+    void onClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void start() {
+        threads.execute(this::readLoop);
+    }
+
+    // Proxy de type cujas chamadas viram pedidos nesta conexão; outgoing troca os argumentos enviados
+    @SuppressWarnings("unchecked")
+    <T> T remote(Class<T> type, UnaryOperator<Object> outgoing) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + "[" + name + "]";
+                };
+            }
+            Object[] sent = args == null ? new Object[0] : args.clone();
+            for (int i = 0; i < sent.length; i++) {
+                sent[i] = outgoing.apply(sent[i]);
+            }
+            try {
+                return call(key(method), sent);
+            } catch (Throwable t) {
+                if (t instanceof RuntimeException || t instanceof Error) {
+                    throw t;
+                }
+                for (Class<?> declared : method.getExceptionTypes()) {
+                    if (declared.isInstance(t)) {
+                        throw t;
+                    }
+                }
+                throw new RemoteException("Falha em " + method.getName() + ": " + t, t);
+            }
+        });
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Já estava fechada
+        }
+        RemoteException lost = new RemoteException("Conexão com " + name + " encerrada");
+        calls.values().forEach(call -> call.completeExceptionally(lost));
+        calls.clear();
+        onClose.run();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private Object call(String method, Object[] args) throws Throwable {
+        if (closed) {
+            throw new RemoteException("Conexão com " + name + " encerrada");
+        }
+        long id = ids.incrementAndGet();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        calls.put(id, result);
+        try {
+            send(REQUEST, id, out -> {
+                out.writeUTF(method);
+                out.writeObject(args);
+            });
+            return result.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            throw new RemoteException(name + " não respondeu a " + method + " em " + callTimeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Chamada interrompida: " + method);
+        } catch (ObjectStreamException e) {
+            throw new RemoteException("Argumento não serializável em " + method + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            close();
+            throw new RemoteException("Falha ao enviar " + method + " para " + name, e);
+        } finally {
+            calls.remove(id);
+        }
+    }
+
+    private void send(byte type, long id, Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(new byte[HEADER_BYTES]); // Preenchido depois que o tamanho é conhecido
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            payload.write(out);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        int length = frame.limit() - Integer.BYTES;
+        if (length > maxFrameBytes) {
+            throw new IOException("Quadro grande demais: " + length + " bytes (máximo " + maxFrameBytes + ")");
+        }
+        frame.putInt(0, length).put(4, type).putLong(5, id);
+        writeLock.lock();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void readLoop() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024))) {
+            while (!closed) {
+                int length = in.readInt();
+                if (length < HEADER_BYTES - Integer.BYTES || length > maxFrameBytes) {
+                    throw new IOException("Quadro com tamanho inválido: " + length);
+                }
+                byte type = in.readByte();
+                long id = in.readLong();
+                byte[] payload = new byte[length - (HEADER_BYTES - Integer.BYTES)];
+                in.readFully(payload);
+                if (type == REQUEST) {
+                    // Sem vaga, recusa na hora: esperar aqui pararia também as respostas
+                    // que as chamadas em atendimento podem estar aguardando
+                    if (!requests.tryAcquire()) {
+                        reply(id, new RemoteException("Chamadas simultâneas demais em " + name), true);
+                        continue;
+                    }
+                    threads.execute(() -> {
+                        try {
+                            answer(id, payload);
+                        } finally {
+                            requests.release();
+                        }
+                    });
+                } else {
+                    complete(type, id, payload);
+                }
+            }
+        } catch (EOFException e) {
+            // O outro lado fechou a conexão
+        } catch (IOException e) {
+            if (!closed) {
+                System.out.println("⚠️ Conexão com " + name + " encerrada: " + e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void complete(byte type, long id, byte[] payload) {
+        CompletableFuture<Object> call = calls.remove(id);
+        if (call == null) {
+            return; // A chamada já expirou
+        }
+        try (ObjectInputStream in = input(payload)) {
+            Object value = in.readObject();
+            if (type == ERROR) {
+                call.completeExceptionally((Throwable) value);
+            } else {
+                call.complete(value);
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            call.completeExceptionally(new RemoteException("Resposta inválida de " + name, e));
+        }
+    }
+
+    private void answer(long id, byte[] payload) {
+        Object result;
+        boolean failed = false;
+        try (ObjectInputStream in = input(payload)) {
+            String key = in.readUTF();
+            Object[] args = (Object[]) in.readObject();
+            Method method = target != null ? methods(targetType).get(key) : null;
+            if (method == null) {
+                throw new RemoteException("Método desconhecido em " + name + ": " + key);
+            }
+            for (int i = 0; i < args.length; i++) {
+                args[i] = incoming.apply(args[i]);
+            }
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            result = e.getCause();
+            failed = true;
+        } catch (Exception e) {
+            result = e instanceof RemoteException ? e : new RemoteException("Pedido inválido de " + name + ": " + e);
+            failed = true;
+        }
+        reply(id, result, failed);
+    }
+
+    private void reply(long id, Object result, boolean failed) {
+        try {
+            try {
+                send(failed ? ERROR : RESPONSE, id, out -> out.writeObject(result));
+            } catch (ObjectStreamException e) {
+                // O resultado (ou a exceção) não pôde ser serializado: avisa quem chamou
+                RemoteException error = new RemoteException("Resposta não serializável: " + e.getMessage());
+                send(ERROR, id, out -> out.writeObject(error));
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private ObjectInputStream input(byte[] payload) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload));
+        in.setObjectInputFilter(filter);
+        return in;
+    }
+
+    private static Map<String, Method> methods(Class<?> type) {
+        return METHODS.computeIfAbsent(type, t -> {
+            Map<String, Method> methods = new HashMap<>();
+            for (Method method : t.getMethods()) {
+                methods.put(key(method), method);
+            }
+            return methods;
+        });
+    }
+
+    private static String key(Method method) {
+        return method.getName() + Arrays.stream(method.getParameterTypes()).map(Class::getName)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+}
@@ -0,0 +1,41 @@
+package chat.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.function.UnaryOperator;
+
+import chat.IChatClient;
+import chat.IChatServer;
+
+// Lado cliente do transporte NIO: uma conexão com o servidor, vista como um
+// IChatServer. Quando um IChatClient é passado ao servidor, ele passa a atender
+// as chamadas que o servidor faz por esta conexão (notificações e ping).
+public class NioChatClient {
+
+    public static IChatServer connect(String host, int port, int connectTimeoutMillis, int maxFrameBytes,
+            long callTimeoutMillis, int maxRequests) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        Connection connection = new Connection(channel, host + ":" + port, maxFrameBytes, callTimeoutMillis,
+                maxRequests, task -> Thread.ofVirtual().name("whatsut-nio-client").start(task));
+        IChatServer server = connection.remote(IChatServer.class, arg -> {
+            if (arg instanceof IChatClient client) {
+                connection.serve(client, IChatClient.class, UnaryOperator.identity());
+                return CallbackRef.INSTANCE;
+            }
+            return arg;
+        });
+        connection.start();
+        return server;
+    }
+}
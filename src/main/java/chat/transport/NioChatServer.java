@@ -0,0 +1,87 @@
+package chat.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.UnaryOperator;
+
+import chat.IChatClient;
+import chat.IChatServer;
+import chat.server.ServerExecutor;
+
+// Lado servidor do transporte NIO: aceita conexões e atende em cada uma as
+// chamadas de IChatServer. O IChatClient que o cliente passa no login é trocado
+// por um proxy que chama o cliente pela mesma conexão, então o ChatServer não
+// sabe por qual transporte o cliente chegou. Cada chamada, e com ela o acesso ao
+// SQLite, roda numa thread de ServerExecutor (virtual por padrão).
+public class NioChatServer {
+    private final IChatServer server;
+    private final int maxFrameBytes;
+    private final long callTimeoutMillis;
+    private final int maxRequests; // Chamadas atendidas ao mesmo tempo em cada conexão
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final ExecutorService threads = ServerExecutor.newExecutor("whatsut-nio");
+    private ServerSocketChannel listener;
+
+    public NioChatServer(IChatServer server, int maxFrameBytes, long callTimeoutMillis, int maxRequests) {
+        this.server = server;
+        this.maxFrameBytes = maxFrameBytes;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.maxRequests = maxRequests;
+    }
+
+    // Começa a aceitar conexões e devolve a porta (útil com port = 0)
+    public synchronized int start(String host, int port) throws IOException {
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(host, port));
+        int bound = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+        threads.execute(this::acceptLoop);
+        System.out.println("✅ Transporte NIO ouvindo em " + host + ":" + bound);
+        return bound;
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public synchronized void stop() {
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException e) {
+            // Já estava fechado
+        }
+        connections.forEach(Connection::close);
+        threads.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (listener.isOpen()) {
+            try {
+                accept(listener.accept());
+            } catch (IOException e) {
+                if (listener.isOpen()) {
+                    System.out.println("⚠️ Falha ao aceitar conexão NIO: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void accept(SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        Connection connection = new Connection(channel, String.valueOf(channel.getRemoteAddress()),
+                maxFrameBytes, callTimeoutMillis, maxRequests, threads);
+        IChatClient callback = connection.remote(IChatClient.class, UnaryOperator.identity());
+        connection.serve(server, IChatServer.class, arg -> arg == CallbackRef.INSTANCE ? callback : arg);
+        connection.onClose(() -> connections.remove(connection));
+        connections.add(connection);
+        connection.start();
+    }
+}
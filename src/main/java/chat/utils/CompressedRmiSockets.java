@@ -0,0 +1,480 @@
+package chat.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.RMISocketFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Fábricas de socket RMI que comprimem (Deflate) as respostas grandes, como
+// páginas de histórico e partes de arquivos. O que é escrito numa conexão vira
+// quadros de até 64 KB, fechados a cada flush do RMI (fim de cada chamada ou
+// resposta); quadros a partir de threshold bytes vão comprimidos, se isso
+// realmente os diminuir.
+//
+// A fábrica do cliente viaja dentro do stub, então quem recebe o stub já fala
+// o mesmo formato. Mesmo assim, o cliente abre a conexão com um preâmbulo e o
+// lado servidor só usa quadros quando o recebe: conexões sem o preâmbulo seguem
+// sem compressão na mesma porta.
+public class CompressedRmiSockets implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte[] PREAMBLE = { 'W', 'Z', 'F', 1 };
+    private static final int FRAME_SIZE = 64 * 1024;
+    private static final int RAW = 0;
+    private static final int DEFLATED = 1;
+
+    private static final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private static final AtomicLong bytesAfterCompression = new AtomicLong();
+
+    private final int threshold;
+
+    public CompressedRmiSockets(int threshold) {
+        this.threshold = Math.max(1, threshold);
+    }
+
+    // Fábrica configurada, ou null (sockets padrão do RMI) se a compressão estiver desligada
+    public static CompressedRmiSockets fromConfig() {
+        if (!Config.getBoolean("whatsut.rmi.compression", true)) {
+            return null;
+        }
+        return new CompressedRmiSockets(Config.getInt("whatsut.rmi.compressThreshold", 1024));
+    }
+
+    // Tamanho original e comprimido dos quadros enviados comprimidos por esta JVM
+    public static long getBytesBeforeCompression() {
+        return bytesBeforeCompression.get();
+    }
+
+    public static long getBytesAfterCompression() {
+        return bytesAfterCompression.get();
+    }
+
+    // Conecta pela fábrica global, para manter o prazo de conexão instalado por RmiTimeouts
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        RMISocketFactory factory = RMISocketFactory.getSocketFactory();
+        if (factory == null) {
+            factory = RMISocketFactory.getDefaultSocketFactory();
+        }
+        Socket socket = factory.createSocket(host, port);
+        try {
+            socket.getOutputStream().write(PREAMBLE);
+            return new CompressedSocket(socket, threshold, true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port) {
+            @Override
+            public Socket accept() throws IOException {
+                return new CompressedSocket(super.accept(), threshold, false);
+            }
+        };
+    }
+
+    // O RMI compara as fábricas para reaproveitar portas e conexões
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CompressedRmiSockets sockets && sockets.threshold == threshold;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(threshold);
+    }
+
+    // Socket já conectado; só troca os fluxos e repassa o resto para o original
+    private static final class CompressedSocket extends Socket {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private volatile boolean framed;
+
+        CompressedSocket(Socket socket, int threshold, boolean client) throws IOException {
+            this.socket = socket;
+            this.framed = client;
+            InputStream rawIn = socket.getInputStream();
+            OutputStream rawOut = socket.getOutputStream();
+            FrameOutputStream frames = new FrameOutputStream(rawOut, threshold);
+            if (client) {
+                this.in = new FrameInputStream(rawIn);
+                this.out = frames;
+            } else {
+                // O cliente fala primeiro: quando o servidor for responder, o preâmbulo já foi lido
+                this.in = new NegotiatingInputStream(rawIn);
+                this.out = new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        (framed ? frames : rawOut).write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        (framed ? frames : rawOut).write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        (framed ? frames : rawOut).flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        frames.close();
+                    }
+                };
+            }
+        }
+
+        private final class NegotiatingInputStream extends InputStream {
+            private final InputStream raw;
+            private InputStream source;
+
+            NegotiatingInputStream(InputStream raw) {
+                this.raw = raw;
+            }
+
+            private InputStream source() throws IOException {
+                if (source == null) {
+                    byte[] head = raw.readNBytes(PREAMBLE.length);
+                    if (Arrays.equals(head, PREAMBLE)) {
+                        source = new FrameInputStream(raw);
+                        framed = true;
+                    } else {
+                        source = new SequenceInputStream(new ByteArrayInputStream(head), raw);
+                    }
+                }
+                return source;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return source().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return source().read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return source == null ? 0 : source.available();
+            }
+
+            @Override
+            public void close() throws IOException {
+                raw.close();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Conexão já caiu; fecha o socket mesmo assim
+            }
+            socket.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return socket.isConnected();
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return socket.getInetAddress();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return socket.getLocalAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return socket.getPort();
+        }
+
+        @Override
+        public int getLocalPort() {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return socket.getRemoteSocketAddress();
+        }
+
+        @Override
+        public SocketAddress getLocalSocketAddress() {
+            return socket.getLocalSocketAddress();
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) throws SocketException {
+            socket.setSoTimeout(timeout);
+        }
+
+        @Override
+        public int getSoTimeout() throws SocketException {
+            return socket.getSoTimeout();
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) throws SocketException {
+            socket.setTcpNoDelay(on);
+        }
+
+        @Override
+        public boolean getTcpNoDelay() throws SocketException {
+            return socket.getTcpNoDelay();
+        }
+
+        @Override
+        public void setKeepAlive(boolean on) throws SocketException {
+            socket.setKeepAlive(on);
+        }
+
+        @Override
+        public boolean getKeepAlive() throws SocketException {
+            return socket.getKeepAlive();
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            socket.shutdownInput();
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            socket.shutdownOutput();
+        }
+
+        @Override
+        public String toString() {
+            return "CompressedSocket[" + socket + "]";
+        }
+    }
+
+    // Quadro: tipo (1 byte), tamanho original (int) e, se comprimido, o tamanho comprimido (int)
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int threshold;
+        private final byte[] buffer = new byte[FRAME_SIZE];
+        private final byte[] compressed = new byte[FRAME_SIZE];
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private int count;
+        private boolean closed;
+
+        FrameOutputStream(OutputStream out, int threshold) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 8192));
+            this.threshold = threshold;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeFrame();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeFrame();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            writeFrame();
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flush();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private void writeFrame() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            int compressedLength = count >= threshold ? deflate() : -1;
+            if (compressedLength > 0) {
+                out.writeByte(DEFLATED);
+                out.writeInt(count);
+                out.writeInt(compressedLength);
+                out.write(compressed, 0, compressedLength);
+                bytesBeforeCompression.addAndGet(count);
+                bytesAfterCompression.addAndGet(compressedLength);
+            } else {
+                out.writeByte(RAW);
+                out.writeInt(count);
+                out.write(buffer, 0, count);
+            }
+            count = 0;
+        }
+
+        // Tamanho comprimido, ou -1 se o resultado não ficar menor que o original
+        private int deflate() {
+            deflater.reset();
+            deflater.setInput(buffer, 0, count);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished() && length < count) {
+                length += deflater.deflate(compressed, length, count - length);
+            }
+            return deflater.finished() && length < count ? length : -1;
+        }
+    }
+
+    private static final class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private final byte[] frame = new byte[FRAME_SIZE];
+        private final byte[] compressed = new byte[FRAME_SIZE];
+        private final Inflater inflater = new Inflater();
+        private int position;
+        private int limit;
+
+        FrameInputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            return frame[position++] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(frame, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+
+        private boolean nextFrame() throws IOException {
+            int type = in.read();
+            if (type < 0) {
+                return false;
+            }
+            int length = in.readInt();
+            if (length <= 0 || length > FRAME_SIZE) {
+                throw new IOException("Quadro com tamanho inválido: " + length);
+            }
+            if (type == RAW) {
+                in.readFully(frame, 0, length);
+            } else if (type == DEFLATED) {
+                int compressedLength = in.readInt();
+                if (compressedLength <= 0 || compressedLength > FRAME_SIZE) {
+                    throw new IOException("Quadro comprimido com tamanho inválido: " + compressedLength);
+                }
+                in.readFully(compressed, 0, compressedLength);
+                inflate(compressedLength, length);
+            } else {
+                throw new IOException("Tipo de quadro desconhecido: " + type);
+            }
+            position = 0;
+            limit = length;
+            return true;
+        }
+
+        private void inflate(int compressedLength, int length) throws IOException {
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedLength);
+            try {
+                int n = 0;
+                while (n < length && !inflater.finished()) {
+                    int inflated = inflater.inflate(frame, n, length - n);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += inflated;
+                }
+                if (n != length) {
+                    throw new IOException("Quadro comprimido corrompido");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Quadro comprimido corrompido: " + e.getMessage(), e);
+            }
+        }
+    }
+}
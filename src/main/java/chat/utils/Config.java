@@ -0,0 +1,46 @@
+package chat.utils;
+
+// Leitura centralizada das configurações do WhatsUT.
+// Os valores vêm de propriedades de sistema (ex.: -Dwhatsut.db.pool.readers=8)
+// e caem no valor padrão quando ausentes ou inválidos.
+public class Config {
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("⚠️ Valor inválido para " + key + ": " + value + " (usando " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("⚠️ Valor inválido para " + key + ": " + value + " (usando " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+}
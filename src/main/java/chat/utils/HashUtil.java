@@ -1,24 +1,77 @@
 package chat.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class HashUtil {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final MessageDigest PROTOTYPE = newSha256();
+    // Um digest por thread de plataforma; threads virtuais são criadas por tarefa,
+    // então para elas um clone do protótipo sai mais barato que o ThreadLocal
+    private static final ThreadLocal<MessageDigest> LOCAL = ThreadLocal.withInitial(HashUtil::copyPrototype);
 
     // Função para gerar o hash SHA-256 da senha
     public static String generateHash(String password) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(password.getBytes());
-            
-            // Convertendo os bytes do hash para uma string hexadecimal
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                hexString.append(String.format("%02x", b));
+        return sha256Hex(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // SHA-256 de um bloco de bytes (senhas e conteúdo de arquivos) em hexadecimal
+    public static String sha256Hex(byte[] data) {
+        return toHex(sha256().digest(data));
+    }
+
+    // SHA-256 de um arquivo, lido aos pedaços para não carregá-lo inteiro na memória
+    public static String sha256Hex(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
             }
-            return hexString.toString();
+        }
+        return toHex(digest.digest());
+    }
+
+    // Digest novo, para quem o mantém entre várias chamadas (ex.: download em partes)
+    public static MessageDigest newSha256() {
+        try {
+            return PROTOTYPE != null ? copyPrototype() : MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Erro ao gerar o hash", e);
         }
     }
+
+    // Digest da thread atual, zerado; não pode ser guardado nem usado por outra thread
+    private static MessageDigest sha256() {
+        if (Thread.currentThread().isVirtual()) {
+            return copyPrototype();
+        }
+        MessageDigest digest = LOCAL.get();
+        digest.reset();
+        return digest;
+    }
+
+    private static MessageDigest copyPrototype() {
+        try {
+            return (MessageDigest) PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Erro ao gerar o hash", e);
+        }
+    }
+
+    // Convertendo os bytes do hash para uma string hexadecimal (por tabela, sem String.format)
+    public static String toHex(byte[] hashBytes) {
+        char[] hex = new char[hashBytes.length * 2];
+        for (int i = 0; i < hashBytes.length; i++) {
+            hex[2 * i] = HEX[(hashBytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hashBytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
 }
@@ -0,0 +1,109 @@
+package chat.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+// Métricas do servidor num só lugar: contadores, medidores (lidos na hora do
+// relatório) e histogramas de latência, todos por nome. Quem registra guarda a
+// referência devolvida por counter()/histogram() e só soma nela; a busca por nome
+// acontece uma vez. report() gera o texto devolvido por getServerStats.
+public class Metrics {
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static LatencyHistogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    // Valor lido só quando o relatório é gerado; registrar de novo com o mesmo nome substitui
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    // Proxy de type que mede cada método de target num histograma "prefix método(parâmetros)"
+    // e conta as chamadas que terminaram em exceção em "prefix método(parâmetros) erros"
+    @SuppressWarnings("unchecked")
+    public static <T> T timed(Class<T> type, T target, String prefix) {
+        Map<Method, LatencyHistogram> latencies = new HashMap<>();
+        Map<Method, LongAdder> errors = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            String name = prefix + " " + method.getName() + Arrays.stream(method.getParameterTypes())
+                    .map(Class::getSimpleName).collect(Collectors.joining(",", "(", ")"));
+            latencies.put(method, histogram(name));
+            errors.put(method, counter(name + " erros"));
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            LatencyHistogram latency = latencies.get(method);
+            if (latency == null) {
+                return method.invoke(target, args); // equals, hashCode, toString
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                errors.get(method).increment();
+                throw e.getCause();
+            } finally {
+                latency.recordSince(start);
+            }
+        });
+    }
+
+    // Relatório em texto: medidores, contadores e, para cada histograma com amostras,
+    // quantidade, percentis, máximo e média em microssegundos
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("# WhatsUT: estatísticas do servidor em ").append(LocalDateTime.now().format(TIME)).append('\n');
+
+        out.append("\n## Medidores\n");
+        new TreeMap<>(GAUGES).forEach((name, value) -> {
+            long current;
+            try {
+                current = value.getAsLong();
+            } catch (RuntimeException e) {
+                current = -1; // Fonte indisponível (ex.: já encerrada)
+            }
+            out.append(name).append(' ').append(current).append('\n');
+        });
+
+        out.append("\n## Contadores\n");
+        new TreeMap<>(COUNTERS).forEach((name, value) -> {
+            long sum = value.sum();
+            if (sum > 0) {
+                out.append(name).append(' ').append(sum).append('\n');
+            }
+        });
+
+        out.append("\n## Latência (µs): chamadas p50 p90 p99 p99.9 máx média\n");
+        new TreeMap<>(HISTOGRAMS).forEach((name, histogram) -> {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            if (s.getCount() == 0) {
+                return;
+            }
+            out.append(name).append(' ').append(s.getCount());
+            for (long nanos : new long[] { s.percentileNanos(0.5), s.percentileNanos(0.9),
+                    s.percentileNanos(0.99), s.percentileNanos(0.999), s.getMaxNanos(), s.getMeanNanos() }) {
+                out.append(' ').append(String.format("%.1f", LatencyHistogram.toMicros(nanos)));
+            }
+            out.append('\n');
+        });
+        return out.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package chat.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Hash das senhas no cadastro e no login. Sem KDF (whatsut.auth.kdfIterations = 0,
+// o padrão) é o SHA-256 de sempre, feito na própria thread. Com KDF, as senhas
+// passam a ser gravadas com PBKDF2-HMAC-SHA256 e sal, calculado num pool limitado
+// de threads de plataforma: uma enxurrada de logins ocupa no máximo essas threads
+// e a fila, e o excesso é recusado em vez de tirar CPU do tráfego de mensagens.
+// Hashes antigos continuam valendo e são refeitos no formato atual no próximo login.
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$"; // pbkdf2$<iterações>$<sal>$<hash>, em hexadecimal
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final HexFormat HEX = HexFormat.of();
+
+    // Tempo por chamada, incluindo a espera na fila do pool (também no relatório de Metrics)
+    public static final class Latency {
+        private final LatencyHistogram histogram;
+
+        Latency(String name) {
+            this.histogram = Metrics.histogram(name);
+        }
+
+        void record(long startNanos) {
+            histogram.recordSince(startNanos);
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public long getAverageMicros() {
+            return histogram.getMeanNanos() / 1000;
+        }
+
+        public long getMaxMicros() {
+            return histogram.getMaxNanos() / 1000;
+        }
+    }
+
+    private final int iterations;
+    private final ThreadPoolExecutor pool;
+    private final SecureRandom random = new SecureRandom();
+    private final Latency hashes = new Latency("auth hash");
+    private final Latency verifications = new Latency("auth verificação");
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PasswordHasher(int iterations, int threads, int queueCapacity) {
+        this.iterations = Math.max(0, iterations);
+        int size = Math.max(1, threads);
+        this.pool = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().daemon().name("whatsut-hash-", 0).factory());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static PasswordHasher fromConfig() {
+        return new PasswordHasher(Config.getInt("whatsut.auth.kdfIterations", 0),
+                Config.getInt("whatsut.auth.hashThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Config.getInt("whatsut.auth.hashQueue", 256));
+    }
+
+    // Hash para gravar; null se o pool estiver cheio
+    public String hash(String password) {
+        long start = System.nanoTime();
+        try {
+            if (iterations == 0) {
+                return HashUtil.generateHash(password);
+            }
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            byte[] key = derive(password, salt, iterations);
+            return key == null ? null
+                    : PREFIX + iterations + "$" + HEX.formatHex(salt) + "$" + HEX.formatHex(key);
+        } finally {
+            hashes.record(start);
+        }
+    }
+
+    // true se a senha confere com o hash gravado (false também se o pool recusou)
+    public boolean verify(String password, String stored) {
+        long start = System.nanoTime();
+        try {
+            if (!stored.startsWith(PREFIX)) {
+                return MessageDigest.isEqual(stored.getBytes(StandardCharsets.US_ASCII),
+                        HashUtil.generateHash(password).getBytes(StandardCharsets.US_ASCII));
+            }
+            String[] parts = stored.split("\\$");
+            if (parts.length != 4) {
+                return false;
+            }
+            byte[] key = derive(password, HEX.parseHex(parts[2]), Integer.parseInt(parts[1]));
+            return key != null && MessageDigest.isEqual(key, HEX.parseHex(parts[3]));
+        } catch (IllegalArgumentException e) {
+            System.out.println("⚠️ Hash de senha gravado em formato inválido");
+            return false;
+        } finally {
+            verifications.record(start);
+        }
+    }
+
+    // true se o hash gravado não está no formato configurado agora
+    public boolean needsRehash(String stored) {
+        if (iterations == 0) {
+            return false;
+        }
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    public Latency getHashLatency() {
+        return hashes;
+    }
+
+    public Latency getVerifyLatency() {
+        return verifications;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // PBKDF2 no pool; null se a fila estiver cheia ou a thread for interrompida
+    private byte[] derive(String password, byte[] salt, int rounds) {
+        Callable<byte[]> work = () -> {
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, KEY_BITS);
+            try {
+                return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            } finally {
+                spec.clearPassword();
+            }
+        };
+        try {
+            return pool.submit(work).get();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            System.out.println("⚠️ Fila de hash de senhas cheia: pedido recusado");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof GeneralSecurityException || cause instanceof IllegalArgumentException)) {
+                throw new IllegalStateException(cause);
+            }
+            System.out.println("Erro ao calcular hash da senha: " + cause.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,165 @@
+package chat.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Codificação binária compacta usada pelos objetos de chat.info no RMI (Externalizable).
+// Inteiros em varint (7 bits por byte), strings como UTF-8 com tamanho na frente e
+// nomes repetidos (remetente, destinatário, grupo) trocados por um índice na segunda
+// vez em que aparecem dentro da mesma tabela de nomes.
+public class WireFormat {
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+
+    // Inteiro não negativo em varint
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Varint malformado");
+    }
+
+    // Inteiro com sinal (ex.: diferença entre timestamps) em zigzag + varint
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) { // Com 10 bytes o varint pode ligar o bit de sinal
+            throw new InvalidObjectException("Valor fora do limite: " + value);
+        }
+        return (int) value;
+    }
+
+    // String UTF-8 com o tamanho + 1 na frente (0 representa null); sem o limite de 64 KB do writeUTF
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new InvalidObjectException("String grande demais: " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        writeVarInt(out, value.length);
+        out.write(value);
+    }
+
+    public static byte[] readBytes(DataInput in, int maxLength) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > maxLength) {
+            throw new InvalidObjectException("Bloco grande demais: " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    // Hash SHA-256 em hexadecimal como 32 bytes crus; false se não estiver nesse formato
+    public static boolean canPackHash(String hash) {
+        if (hash == null || hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.digit(hash.charAt(i), 16) < 0 || Character.isUpperCase(hash.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void writePackedHash(DataOutput out, String hash) throws IOException {
+        for (int i = 0; i < hash.length(); i += 2) {
+            out.writeByte(Character.digit(hash.charAt(i), 16) << 4 | Character.digit(hash.charAt(i + 1), 16));
+        }
+    }
+
+    public static String readPackedHash(DataInput in) throws IOException {
+        byte[] bytes = new byte[32];
+        in.readFully(bytes);
+        return HashUtil.toHex(bytes);
+    }
+
+    // Tabela de nomes de quem escreve: a primeira ocorrência vai por extenso (índice 0
+    // seguido da string) e as seguintes só com o índice + 1
+    public static class NameWriter {
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        public void write(DataOutput out, String name) throws IOException {
+            Integer index = name != null ? indexes.get(name) : null;
+            if (index != null) {
+                writeVarInt(out, index + 1);
+                return;
+            }
+            writeVarInt(out, 0);
+            writeString(out, name);
+            if (name != null) {
+                indexes.put(name, indexes.size());
+            }
+        }
+    }
+
+    // Lado de quem lê, espelhando a NameWriter
+    public static class NameReader {
+        private final List<String> names = new ArrayList<>();
+
+        public String read(DataInput in) throws IOException {
+            int index = readVarInt(in);
+            if (index > 0) {
+                if (index > names.size()) {
+                    throw new InvalidObjectException("Índice de nome inválido: " + index);
+                }
+                return names.get(index - 1);
+            }
+            String name = readString(in);
+            if (name != null) {
+                names.add(name);
+            }
+            return name;
+        }
+    }
+}
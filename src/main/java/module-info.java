@@ -3,6 +3,7 @@ module chat {
     requires javafx.fxml;
     requires java.rmi;
     requires java.sql;
+    requires jdk.httpserver;
 
     opens chat to javafx.fxml;
     exports chat;
@@ -11,4 +12,5 @@ module chat {
     exports chat.UI;
     exports chat.utils;
     exports chat.database;
+    exports chat.server;
 }
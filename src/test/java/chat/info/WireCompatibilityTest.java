@@ -0,0 +1,201 @@
+package chat.info;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import chat.utils.WireFormat;
+
+// Ida e volta de cada classe de chat.info pela serialização Java, que é o que o RMI
+// e o transporte NIO usam: o que sai de writeExternal tem que voltar igual
+class WireCompatibilityTest {
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+
+    private static MessageInfo text(long id, String sender, String recipient, String message, long timestamp) {
+        MessageInfo msg = new MessageInfo(sender, recipient, message, timestamp);
+        msg.setId(id);
+        return msg;
+    }
+
+    private static void assertSameMessage(MessageInfo expected, MessageInfo actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getSender(), actual.getSender());
+        assertEquals(expected.getRecipient(), actual.getRecipient());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.isFile(), actual.isFile());
+        if (expected.getFile() == null) {
+            assertNull(actual.getFile());
+        } else {
+            assertSameFile(expected.getFile(), actual.getFile());
+        }
+    }
+
+    private static void assertSameFile(FileInfo expected, FileInfo actual) {
+        assertEquals(expected.getMessageId(), actual.getMessageId());
+        assertEquals(expected.getFileName(), actual.getFileName());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getHash(), actual.getHash());
+        assertArrayEquals(expected.getFileData(), actual.getFileData());
+    }
+
+    @Test
+    void textMessageRoundTrips() throws Exception {
+        MessageInfo msg = text(42, "alice", "bob", "oi, tudo bem? 👋", 1_700_000_000_000L);
+        assertSameMessage(msg, roundTrip(msg));
+    }
+
+    @Test
+    void fileDescriptorRoundTripsWithPackedOrTextHash() throws Exception {
+        FileInfo packed = new FileInfo(7, "foto.png", 123_456, HASH);
+        assertSameFile(packed, roundTrip(packed));
+
+        FileInfo text = new FileInfo(8, "doc.pdf", 10, "not-a-sha256");
+        assertSameFile(text, roundTrip(text));
+
+        FileInfo noHash = new FileInfo(9, "x", 0, null);
+        assertSameFile(noHash, roundTrip(noHash));
+    }
+
+    @Test
+    void fileWithContentRoundTrips() throws Exception {
+        byte[] data = new byte[FileInfo.CHUNK_SIZE + 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        FileInfo file = new FileInfo("dados.bin", data);
+        FileInfo copy = roundTrip(file);
+        assertTrue(copy.hasData());
+        assertSameFile(file, copy);
+    }
+
+    @Test
+    void fileContentAboveMaxChunkSizeIsRejected() {
+        FileInfo file = new FileInfo("grande.bin", new byte[FileInfo.MAX_CHUNK_SIZE + 1]);
+        assertThrows(IOException.class, () -> roundTrip(file));
+    }
+
+    @Test
+    void negativeContentLengthIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            WireFormat.writeVarLong(out, 0); // messageId
+            WireFormat.writeString(out, "x");
+            WireFormat.writeVarLong(out, 1); // size
+            out.writeByte(4); // HAS_DATA
+            WireFormat.writeVarLong(out, -1L); // Tamanho do conteúdo com o bit de sinal ligado
+        }
+        try (ObjectInputStream in = objectInput(bytes.toByteArray())) {
+            assertThrows(IOException.class, () -> new FileInfo().readExternal(in));
+        }
+    }
+
+    // Bytes crus lidos como se viessem de dentro de um readExternal
+    private static ObjectInputStream objectInput(byte[] raw) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(header)) {
+            out.write(raw);
+        }
+        return new ObjectInputStream(new ByteArrayInputStream(header.toByteArray()));
+    }
+
+    @Test
+    void fileMessageRoundTrips() throws Exception {
+        MessageInfo msg = new MessageInfo("alice", "grupo", new FileInfo(0, "a.txt", 3, HASH), 1000);
+        msg.setId(5);
+        msg.getFile().setMessageId(5);
+        MessageInfo copy = roundTrip(msg);
+        assertSameMessage(msg, copy);
+        assertTrue(copy.isFile());
+    }
+
+    @Test
+    void messageListRoundTripsWithRepeatedNamesAndOutOfOrderIds() throws Exception {
+        List<MessageInfo> messages = new ArrayList<>();
+        messages.add(text(100, "alice", "bob", "primeira", 5_000));
+        messages.add(text(101, "bob", "alice", "resposta", 4_000)); // Hora menor: diferença negativa
+        messages.add(text(99, "alice", "bob", null, 6_000));
+        MessageInfo file = new MessageInfo("bob", "alice", new FileInfo(102, "f", 1, HASH), 7_000);
+        file.setId(102);
+        messages.add(file);
+
+        List<MessageInfo> copy = roundTrip(new MessageList(messages));
+        assertEquals(messages.size(), copy.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertSameMessage(messages.get(i), copy.get(i));
+        }
+        assertTrue(roundTrip(new MessageList(List.of())).isEmpty());
+    }
+
+    @Test
+    void groupInfoRoundTrips() throws Exception {
+        GroupInfo group = new GroupInfo("devs", "Grupo de teste", "alice");
+        group.addMember("bob");
+        group.addPendingRequest("carol");
+        group.addMessage("bem-vindos");
+
+        GroupInfo copy = roundTrip(group);
+        assertEquals(group.getName(), copy.getName());
+        assertEquals(group.getDescription(), copy.getDescription());
+        assertEquals(group.getOwner(), copy.getOwner());
+        assertEquals(group.getMembers(), copy.getMembers());
+        assertEquals(group.getPendingRequests(), copy.getPendingRequests());
+        assertEquals(group.getMessages(), copy.getMessages());
+    }
+
+    @Test
+    void userInfoRoundTrips() throws Exception {
+        UserInfo user = new UserInfo("alice", "segredo", "alice@example.com");
+        UserInfo copy = roundTrip(user);
+        assertEquals(user.getUsername(), copy.getUsername());
+        assertEquals(user.getPassword(), copy.getPassword());
+        assertEquals(user.getEmail(), copy.getEmail());
+    }
+
+    @Test
+    void sendResultRoundTripsEveryStatus() throws Exception {
+        for (SendResult result : new SendResult[] { SendResult.sent(77), SendResult.rateLimited(1500),
+                SendResult.busy(250), SendResult.failed(), SendResult.pending() }) {
+            SendResult copy = roundTrip(result);
+            assertEquals(result.getStatus(), copy.getStatus());
+            assertEquals(result.getMessageId(), copy.getMessageId());
+            assertEquals(result.getRetryAfterMillis(), copy.getRetryAfterMillis());
+        }
+    }
+
+    @Test
+    void sessionTokenRoundTripsAndStaysDistinct() throws Exception {
+        SessionToken token = SessionToken.random();
+        SessionToken copy = roundTrip(token);
+        assertEquals(token, copy);
+        assertEquals(token.hashCode(), copy.hashCode());
+        assertNotEquals(token, SessionToken.random());
+        assertFalse(token.toString().length() > 32); // Nunca imprime o token inteiro
+    }
+}
@@ -0,0 +1,136 @@
+package chat.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+// Codificação de WireFormat: valores conhecidos em bytes fixos (o formato não pode
+// mudar sem quebrar clientes antigos) e entradas malformadas recusadas com IOException
+class WireFormatTest {
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static DataInputStream input(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return input(bytes);
+    }
+
+    @Test
+    void varLongKeepsItsByteLayout() throws IOException {
+        assertArrayEquals(new byte[] { 0 }, encode(out -> WireFormat.writeVarLong(out, 0)));
+        assertArrayEquals(new byte[] { 0x7F }, encode(out -> WireFormat.writeVarLong(out, 127)));
+        assertArrayEquals(new byte[] { (byte) 0x80, 0x01 }, encode(out -> WireFormat.writeVarLong(out, 128)));
+        assertArrayEquals(new byte[] { (byte) 0xAC, 0x02 }, encode(out -> WireFormat.writeVarLong(out, 300)));
+    }
+
+    @Test
+    void signedVarLongUsesZigZag() throws IOException {
+        assertArrayEquals(new byte[] { 0x01 }, encode(out -> WireFormat.writeSignedVarLong(out, -1)));
+        assertArrayEquals(new byte[] { 0x02 }, encode(out -> WireFormat.writeSignedVarLong(out, 1)));
+        for (long value : new long[] { 0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE, -86_400_000L }) {
+            byte[] encoded = encode(out -> WireFormat.writeSignedVarLong(out, value));
+            assertEquals(value, WireFormat.readSignedVarLong(input(encoded)));
+        }
+    }
+
+    @Test
+    void stringsRoundTripIncludingNullAndEmpty() throws IOException {
+        for (String value : new String[] { null, "", "olá, mundo ✅", "x".repeat(70_000) }) {
+            byte[] encoded = encode(out -> WireFormat.writeString(out, value));
+            assertEquals(value, WireFormat.readString(input(encoded)));
+        }
+        assertArrayEquals(new byte[] { 0 }, encode(out -> WireFormat.writeString(out, null)));
+    }
+
+    @Test
+    void readVarIntRejectsValuesThatDoNotFitAnInt() {
+        // 2^31, acima de Integer.MAX_VALUE
+        assertThrows(IOException.class, () -> WireFormat.readVarInt(input(
+                0x80, 0x80, 0x80, 0x80, 0x08)));
+        // 10 bytes com o bit de sinal ligado: readVarLong devolve um long negativo
+        assertThrows(IOException.class, () -> WireFormat.readVarInt(input(
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+                0xFF, 0xFF, 0xFF, 0xFF, 0x01)));
+    }
+
+    @Test
+    void readVarLongRejectsOverlongEncodings() {
+        byte[] overlong = new byte[11];
+        java.util.Arrays.fill(overlong, (byte) 0x80);
+        assertThrows(IOException.class, () -> WireFormat.readVarLong(input(overlong)));
+    }
+
+    @Test
+    void readBytesRejectsLengthsAboveTheLimit() throws IOException {
+        byte[] encoded = encode(out -> WireFormat.writeBytes(out, new byte[10]));
+        assertThrows(IOException.class, () -> WireFormat.readBytes(input(encoded), 9));
+        assertEquals(10, WireFormat.readBytes(input(encoded), 10).length);
+    }
+
+    @Test
+    void readStringRejectsAnImpossibleLength() {
+        // Tamanho + 1 = 0xFFFFFFFF, fora do limite de um int
+        assertThrows(IOException.class, () -> WireFormat.readString(input(
+                0xFF, 0xFF, 0xFF, 0xFF, 0x0F)));
+    }
+
+    @Test
+    void packedHashRoundTrips() throws IOException {
+        String hash = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+        byte[] encoded = encode(out -> WireFormat.writePackedHash(out, hash));
+        assertEquals(32, encoded.length);
+        assertEquals(hash, WireFormat.readPackedHash(input(encoded)));
+    }
+
+    @Test
+    void nameTableSendsRepeatedNamesAsIndexes() throws IOException {
+        byte[] encoded = encode(out -> {
+            WireFormat.NameWriter names = new WireFormat.NameWriter();
+            names.write(out, "alice");
+            names.write(out, "bob");
+            names.write(out, "alice");
+            names.write(out, null);
+        });
+        // 0 + "alice", 0 + "bob", índice 1, 0 + null
+        assertEquals(1 + 6 + 1 + 4 + 1 + 2, encoded.length);
+
+        DataInputStream in = input(encoded);
+        WireFormat.NameReader names = new WireFormat.NameReader();
+        assertEquals("alice", names.read(in));
+        assertEquals("bob", names.read(in));
+        assertEquals("alice", names.read(in));
+        assertNull(names.read(in));
+    }
+
+    @Test
+    void nameReaderRejectsUnknownIndex() {
+        assertThrows(IOException.class, () -> new WireFormat.NameReader().read(input(3)));
+    }
+}